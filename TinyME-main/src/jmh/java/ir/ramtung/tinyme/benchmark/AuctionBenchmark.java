@@ -0,0 +1,66 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuctionBenchmark {
+    @State(Scope.Thread)
+    public static class CrossedBook {
+        @Param({"10", "100", "1000"})
+        int ordersPerSide;
+
+        Matcher matcher;
+        Broker broker;
+        Security security;
+        long nextOrderId;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            matcher = Fixture.matcher();
+            broker = Fixture.broker(1);
+            fill();
+        }
+
+        void fill() {
+            security = Security.builder().isin("ABC").build();
+            Shareholder buyer = Fixture.shareholder(1, security);
+            Shareholder seller = Fixture.shareholder(2, security);
+            OrderBook orderBook = security.getOrderBook();
+            for (int i = 0; i < ordersPerSide; i++) {
+                orderBook.enqueue(new Order(++nextOrderId, security, Side.BUY, 100, 15000 + i, broker, buyer));
+                orderBook.enqueue(new Order(++nextOrderId, security, Side.SELL, 100, 14900 + i, broker, seller));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RefilledCrossedBook extends CrossedBook {
+        @Setup(Level.Invocation)
+        public void refill() {
+            fill();
+        }
+    }
+
+    @Benchmark
+    public MatchingContext calculateReopeningPrice(CrossedBook book) {
+        MatchingContext context = book.security.getMatchingContext();
+        book.matcher.calculateReopeningPrice(context, book.security.getOrderBook());
+        return context;
+    }
+
+    @Benchmark
+    public List<Trade> reopen(RefilledCrossedBook book) {
+        MatchingContext context = book.security.getMatchingContext();
+        book.matcher.calculateReopeningPrice(context, book.security.getOrderBook());
+        return book.matcher.auctionMatch(context, book.security.getOrderBook());
+    }
+}
@@ -0,0 +1,35 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Builds the pieces benchmarks share: a {@link Matcher} wired with the real
+ * matching controls, and market participants with effectively unlimited credit
+ * and positions, so the measured paths are never cut short by a rejection.
+ */
+final class Fixture {
+    private Fixture() {
+    }
+
+    static Matcher matcher() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.scan("ir.ramtung.tinyme.domain.service.control");
+        context.register(Matcher.class);
+        context.refresh();
+        return context.getBean(Matcher.class);
+    }
+
+    static Broker broker(long brokerId) {
+        return Broker.builder().brokerId(brokerId).name("broker-" + brokerId).credit(Long.MAX_VALUE / 4).build();
+    }
+
+    static Shareholder shareholder(long shareholderId, Security security) {
+        Shareholder shareholder = Shareholder.builder().shareholderId(shareholderId).name("shareholder-" + shareholderId).build();
+        shareholder.incPosition(security, Integer.MAX_VALUE / 2);
+        return shareholder;
+    }
+}
@@ -0,0 +1,44 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IcebergBenchmark {
+    @Param({"10", "1000"})
+    int peakSize;
+
+    private Matcher matcher;
+    private Security security;
+    private Broker broker;
+    private Shareholder buyer;
+    private long nextOrderId;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        matcher = Fixture.matcher();
+        broker = Fixture.broker(1);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIceberg() {
+        security = Security.builder().isin("ICE").build();
+        buyer = Fixture.shareholder(1, security);
+        Shareholder seller = Fixture.shareholder(2, security);
+        security.getOrderBook().enqueue(new IcebergOrder(++nextOrderId, security, Side.SELL,
+                Integer.MAX_VALUE / 2, 15000, broker, seller, peakSize));
+    }
+
+    @Benchmark
+    public MatchResult executeAgainstReplenishedPeak() {
+        return matcher.execute(new Order(++nextOrderId, security, Side.BUY, peakSize, 15000, broker, buyer));
+    }
+}
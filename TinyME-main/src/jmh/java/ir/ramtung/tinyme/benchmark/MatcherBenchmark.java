@@ -0,0 +1,54 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.MatchResult;
+import ir.ramtung.tinyme.domain.entity.Order;
+import ir.ramtung.tinyme.domain.entity.OrderBook;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+    @Param({"1", "10", "100"})
+    int levels;
+
+    private Matcher matcher;
+    private Security security;
+    private Broker broker;
+    private Shareholder shareholder;
+    private Order sweepingOrder;
+    private long nextOrderId;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        matcher = Fixture.matcher();
+        security = Security.builder().isin("ABC").build();
+        broker = Fixture.broker(1);
+        shareholder = Fixture.shareholder(1, security);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillSellSide() {
+        OrderBook orderBook = security.getOrderBook();
+        while (orderBook.hasOrderOfType(Side.SELL))
+            orderBook.removeFirst(Side.SELL);
+        for (int i = 0; i < levels; i++)
+            orderBook.enqueue(new Order(++nextOrderId, security, Side.SELL, 100, 15000 + i, broker, shareholder));
+        sweepingOrder = new Order(++nextOrderId, security, Side.BUY, 100 * levels, 15000 + levels, broker, shareholder);
+    }
+
+    @Benchmark
+    public MatchResult executeSweepingLevels() {
+        return matcher.execute(sweepingOrder);
+    }
+}
@@ -0,0 +1,62 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBookBenchmark {
+    private static final int ORDERS_PER_LEVEL = 10;
+
+    @Param({"10", "1000", "100000"})
+    int depth;
+
+    private OrderBook orderBook;
+    private Order[] orders;
+    private Order incoming;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Security security = Security.builder().isin("ABC").build();
+        Broker broker = Fixture.broker(1);
+        Shareholder shareholder = Fixture.shareholder(1, security);
+        orderBook = security.getOrderBook();
+        orders = new Order[depth];
+        for (int i = 0; i < depth; i++) {
+            orders[i] = new Order(i + 1, security, Side.BUY, 100, 15000 - i / ORDERS_PER_LEVEL, broker, shareholder);
+            orderBook.enqueue(orders[i]);
+        }
+        incoming = new Order(depth + 1, security, Side.BUY, 100, 15000 - depth / (2 * ORDERS_PER_LEVEL), broker, shareholder);
+    }
+
+    private Order nextOrder() {
+        Order order = orders[cursor];
+        cursor = cursor + 1 == orders.length ? 0 : cursor + 1;
+        return order;
+    }
+
+    @Benchmark
+    public void enqueueThenRemove() {
+        orderBook.enqueue(incoming);
+        orderBook.removeByOrderId(Side.BUY, incoming.getOrderId());
+    }
+
+    @Benchmark
+    public Order findByOrderId() {
+        return orderBook.findByOrderId(Side.BUY, nextOrder().getOrderId());
+    }
+
+    @Benchmark
+    public void removeThenReenqueue() {
+        Order order = nextOrder();
+        orderBook.removeByOrderId(Side.BUY, order.getOrderId());
+        orderBook.enqueue(order);
+    }
+}
@@ -0,0 +1,61 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopLimitCascadeBenchmark {
+    private static final int LAST_TRADE_PRICE = 15000;
+
+    @Param({"1", "10", "100", "1000"})
+    int triggeredOrders;
+
+    @Param({"0", "1000"})
+    int untriggeredOrders;
+
+    private Matcher matcher;
+    private Broker broker;
+    private Security security;
+    private Shareholder buyer;
+    private Shareholder seller;
+    private long nextOrderId;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        matcher = Fixture.matcher();
+        broker = Fixture.broker(1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupStopLadder() {
+        security = Security.builder().isin("ABC").build();
+        security.getMatchingContext().setLastTradePrice(LAST_TRADE_PRICE);
+        buyer = Fixture.shareholder(1, security);
+        seller = Fixture.shareholder(2, security);
+        InactiveOrderBook inactiveOrderBook = security.getInactiveOrderBook();
+        for (int i = 0; i < untriggeredOrders; i++)
+            inactiveOrderBook.enqueue(new StopLimitOrder(++nextOrderId, security, Side.BUY, 10, LAST_TRADE_PRICE + 100,
+                    broker, buyer, LAST_TRADE_PRICE + 1 + i));
+        for (int i = 0; i < triggeredOrders; i++) {
+            security.getOrderBook().enqueue(new Order(++nextOrderId, security, Side.SELL, 10, LAST_TRADE_PRICE - i,
+                    broker, seller));
+            inactiveOrderBook.enqueue(new StopLimitOrder(++nextOrderId, security, Side.BUY, 10, LAST_TRADE_PRICE,
+                    broker, buyer, LAST_TRADE_PRICE - i));
+        }
+    }
+
+    @Benchmark
+    public ArrayList<MatchResult> activateCascade() {
+        return security.activateStopLimitOrder(matcher, MatchingState.CONTINUOUS);
+    }
+}
@@ -0,0 +1,51 @@
+package ir.ramtung.tinyme.benchmark.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records request latencies in nanoseconds into two HDR histograms: the raw
+ * service times, and the same samples corrected for coordinated omission against
+ * the intended interval between requests, so a stall also accounts for the requests
+ * that would have been sent while it lasted.
+ */
+class LatencyRecorder {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Histogram raw = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+    private final Histogram corrected = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+    private final long expectedIntervalNanos;
+
+    LatencyRecorder(long expectedIntervalNanos) {
+        this.expectedIntervalNanos = expectedIntervalNanos;
+    }
+
+    void record(long latencyNanos) {
+        long value = Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS);
+        raw.recordValue(value);
+        if (expectedIntervalNanos > 0)
+            corrected.recordValueWithExpectedInterval(value, expectedIntervalNanos);
+        else
+            corrected.recordValue(value);
+    }
+
+    void report(PrintStream out, String title) {
+        out.println(title);
+        summary(out, "raw", raw);
+        summary(out, "corrected", corrected);
+        out.println();
+        out.println("Corrected percentile distribution (microseconds):");
+        corrected.outputPercentileDistribution(out, 1000.0);
+    }
+
+    private static void summary(PrintStream out, String name, Histogram histogram) {
+        out.printf("  %-10s count=%d p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n", name,
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
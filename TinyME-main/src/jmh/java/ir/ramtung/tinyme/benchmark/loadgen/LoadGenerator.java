@@ -0,0 +1,198 @@
+package ir.ramtung.tinyme.benchmark.loadgen;
+
+import ir.ramtung.tinyme.TinyMeApplication;
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.JMSException;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the engine with {@link OrderFlow} at a fixed request rate and reports
+ * per-request latency. In {@code direct} mode requests go straight to
+ * {@link OrderHandler} on the calling thread, stop-limit cascades run to the end
+ * inline and event publishing is muted, which isolates the matching path. In
+ * {@code jms} mode the whole application runs against an embedded in-VM Artemis
+ * broker; requests are sent to the request queue and a request's latency ends when
+ * its first event arrives on the response queue.
+ * <p>
+ * Options, all {@code --name=value}: {@code mode} (direct|jms), {@code requests},
+ * {@code warmup}, {@code rate} (requests per second, 0 for as fast as possible),
+ * {@code isins}, {@code brokers}, {@code shareholders}, {@code seed} and {@code mix}, seven
+ * comma-separated weights for limit, iceberg, MEQ, stop-limit, update, delete and
+ * auction transition.
+ */
+public class LoadGenerator {
+    private static final String REQUEST_QUEUE = "RQ";
+    private static final String RESPONSE_QUEUE = "RS";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String mode = options.getOrDefault("mode", "direct");
+        int requests = Integer.parseInt(options.getOrDefault("requests", "1000000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "100000"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "50000"));
+        int isins = Integer.parseInt(options.getOrDefault("isins", "20"));
+        int brokers = Integer.parseInt(options.getOrDefault("brokers", "50"));
+        int shareholders = Integer.parseInt(options.getOrDefault("shareholders", "500"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        OrderFlow.Mix mix = OrderFlow.Mix.parse(options.getOrDefault("mix", "50,10,10,10,10,8,2"));
+
+        String[] securityIsins = new String[isins];
+        for (int i = 0; i < isins; i++)
+            securityIsins[i] = String.format("IR%010d", i);
+        OrderFlow flow = new OrderFlow(seed, securityIsins, brokers, shareholders, mix);
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        LatencyRecorder recorder = new LatencyRecorder(intervalNanos);
+
+        try (ConfigurableApplicationContext context = start()) {
+            populate(context, securityIsins, brokers, shareholders);
+            if (mode.equals("direct"))
+                runDirect(context, flow, requests, warmup, intervalNanos, recorder);
+            else if (mode.equals("jms"))
+                runJms(context, flow, requests, warmup, intervalNanos, recorder);
+            else
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        recorder.report(System.out, String.format("%s mode, %d requests after %d warm-up, target rate %s/s",
+                mode, requests, warmup, rate > 0 ? rate : "unbounded"));
+    }
+
+    private static ConfigurableApplicationContext start() {
+        return SpringApplication.run(TinyMeApplication.class,
+                "--spring.profiles.active=test",
+                "--spring.artemis.mode=embedded",
+                "--spring.artemis.embedded.persistent=false",
+                "--spring.artemis.embedded.queues=" + REQUEST_QUEUE + "," + RESPONSE_QUEUE,
+                "--requestQueue=" + REQUEST_QUEUE,
+                "--responseQueue=" + RESPONSE_QUEUE,
+                "--logging.level.ir.ramtung=WARN");
+    }
+
+    private static void populate(ConfigurableApplicationContext context, String[] isins, int brokers, int shareholders) {
+        SecurityRepository securityRepository = context.getBean(SecurityRepository.class);
+        BrokerRepository brokerRepository = context.getBean(BrokerRepository.class);
+        ShareholderRepository shareholderRepository = context.getBean(ShareholderRepository.class);
+        for (String isin : isins)
+            securityRepository.addSecurity(Security.builder().isin(isin).build());
+        for (long brokerId = 1; brokerId <= brokers; brokerId++)
+            brokerRepository.addBroker(Broker.builder().brokerId(brokerId).name("broker-" + brokerId).credit(Long.MAX_VALUE / 4).build());
+        for (long shareholderId = 1; shareholderId <= shareholders; shareholderId++) {
+            Shareholder shareholder = Shareholder.builder().shareholderId(shareholderId).name("shareholder-" + shareholderId).build();
+            for (String isin : isins)
+                shareholder.incPosition(securityRepository.findSecurityByIsin(isin), Integer.MAX_VALUE / 2);
+            shareholderRepository.addShareholder(shareholder);
+        }
+    }
+
+    private static void runDirect(ConfigurableApplicationContext context, OrderFlow flow, int requests, int warmup,
+                                  long intervalNanos, LatencyRecorder recorder) {
+        OrderHandler orderHandler = context.getBean(OrderHandler.class);
+        orderHandler.setActivationScheduler(null, 0);
+        context.getBean(EventPublisher.class).setMuted(true);
+        long start = System.nanoTime();
+        for (int i = 0; i < warmup + requests; i++) {
+            Object request = flow.next();
+            awaitIntendedStart(start + i * intervalNanos);
+            long begin = System.nanoTime();
+            if (request instanceof EnterOrderRq enterOrderRq)
+                orderHandler.handleEnterOrder(enterOrderRq);
+            else if (request instanceof DeleteOrderRq deleteOrderRq)
+                orderHandler.handleDeleteOrder(deleteOrderRq);
+            else if (request instanceof ChangeMatchingStateRq changeMatchingStateRq)
+                orderHandler.handleChangeMatchingStateRq(changeMatchingStateRq);
+            long end = System.nanoTime();
+            if (i >= warmup)
+                recorder.record(end - begin);
+        }
+    }
+
+    private static void runJms(ConfigurableApplicationContext context, OrderFlow flow, int requests, int warmup,
+                               long intervalNanos, LatencyRecorder recorder) throws InterruptedException {
+        JmsTemplate jmsTemplate = context.getBean(JmsTemplate.class);
+        MessageConverter converter = jmsTemplate.getMessageConverter();
+        Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+        CountDownLatch outstanding = new CountDownLatch(requests);
+
+        DefaultMessageListenerContainer responses = new DefaultMessageListenerContainer();
+        responses.setConnectionFactory(context.getBean(ConnectionFactory.class));
+        responses.setDestinationName(RESPONSE_QUEUE);
+        responses.setMessageListener((jakarta.jms.MessageListener) message -> {
+            long receivedAt = System.nanoTime();
+            try {
+                Long sent = sentAt.remove(requestIdOf(converter.fromMessage(message)));
+                if (sent != null) {
+                    recorder.record(receivedAt - sent);
+                    outstanding.countDown();
+                }
+            } catch (JMSException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        responses.afterPropertiesSet();
+        responses.start();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < warmup + requests; i++) {
+            Object request = flow.next();
+            awaitIntendedStart(start + i * intervalNanos);
+            long requestId = requestIdOf(request);
+            if (i >= warmup) {
+                if (requestId < 0)
+                    outstanding.countDown();
+                else
+                    sentAt.put(requestId, System.nanoTime());
+            }
+            jmsTemplate.convertAndSend(REQUEST_QUEUE, request);
+        }
+        if (!outstanding.await(1, TimeUnit.MINUTES))
+            System.out.println("Timed out with " + outstanding.getCount() + " requests unanswered");
+        responses.shutdown();
+    }
+
+    private static void awaitIntendedStart(long intendedStart) {
+        while (System.nanoTime() < intendedStart)
+            Thread.onSpinWait();
+    }
+
+    private static long requestIdOf(Object message) {
+        if (message instanceof EnterOrderRq rq) return rq.getRequestId();
+        if (message instanceof DeleteOrderRq rq) return rq.getRequestId();
+        if (message instanceof OrderAcceptedEvent event) return event.getRequestId();
+        if (message instanceof OrderUpdatedEvent event) return event.getRequestId();
+        if (message instanceof OrderDeletedEvent event) return event.getRequestId();
+        if (message instanceof OrderRejectedEvent event) return event.getRequestId();
+        if (message instanceof OrderExecutedEvent event) return event.getRequestId();
+        return -1;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,143 @@
+package ir.ramtung.tinyme.benchmark.loadgen;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic order flow. Every call to {@link #next} returns one request
+ * drawn from the configured mix over many securities, brokers and shareholders.
+ * Updates and deletes target orders this flow entered earlier; some of those will
+ * already have been filled, which exercises the rejection paths as real flow does.
+ */
+class OrderFlow {
+    enum Kind { LIMIT, ICEBERG, MEQ, STOP_LIMIT, UPDATE, DELETE, AUCTION_TRANSITION }
+
+    record Mix(int limit, int iceberg, int meq, int stopLimit, int update, int delete, int auctionTransition) {
+        static Mix parse(String spec) {
+            String[] weights = spec.split(",");
+            if (weights.length != Kind.values().length)
+                throw new IllegalArgumentException("Mix needs " + Kind.values().length + " weights: " + spec);
+            int[] w = new int[weights.length];
+            for (int i = 0; i < weights.length; i++)
+                w[i] = Integer.parseInt(weights[i].trim());
+            return new Mix(w[0], w[1], w[2], w[3], w[4], w[5], w[6]);
+        }
+
+        int[] weights() {
+            return new int[]{limit, iceberg, meq, stopLimit, update, delete, auctionTransition};
+        }
+    }
+
+    private record LiveOrder(long orderId, Side side, long brokerId, long shareholderId, int peakSize, int meq, int stopPrice) {
+    }
+
+    private static final int MID_PRICE = 15000;
+    private static final int PRICE_SPREAD = 50;
+    private static final int MAX_LIVE_ORDERS_PER_SECURITY = 10_000;
+
+    private final SplittableRandom random;
+    private final String[] isins;
+    private final int brokers;
+    private final int shareholders;
+    private final int[] cumulativeWeights;
+    private final List<List<LiveOrder>> liveOrders = new ArrayList<>();
+    private final MatchingState[] states;
+    private long nextRequestId;
+    private long nextOrderId;
+
+    OrderFlow(long seed, String[] isins, int brokers, int shareholders, Mix mix) {
+        this.random = new SplittableRandom(seed);
+        this.isins = isins;
+        this.brokers = brokers;
+        this.shareholders = shareholders;
+        int[] weights = mix.weights();
+        this.cumulativeWeights = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++)
+            cumulativeWeights[i] = total += weights[i];
+        if (total <= 0)
+            throw new IllegalArgumentException("Mix weights must not all be zero");
+        this.states = new MatchingState[isins.length];
+        for (int i = 0; i < isins.length; i++) {
+            liveOrders.add(new ArrayList<>());
+            states[i] = MatchingState.CONTINUOUS;
+        }
+    }
+
+    Object next() {
+        int security = random.nextInt(isins.length);
+        Kind kind = nextKind();
+        List<LiveOrder> live = liveOrders.get(security);
+        if ((kind == Kind.UPDATE || kind == Kind.DELETE) && live.isEmpty())
+            kind = Kind.LIMIT;
+        return switch (kind) {
+            case LIMIT -> newOrder(security, 0, 0, 0);
+            case ICEBERG -> newOrder(security, 10 * (1 + random.nextInt(5)), 0, 0);
+            case MEQ -> newOrder(security, 0, 10 * (1 + random.nextInt(5)), 0);
+            case STOP_LIMIT -> newOrder(security, 0, 0, MID_PRICE + random.nextInt(-PRICE_SPREAD, PRICE_SPREAD + 1));
+            case UPDATE -> update(security, live.get(random.nextInt(live.size())));
+            case DELETE -> delete(security, live.remove(random.nextInt(live.size())));
+            case AUCTION_TRANSITION -> transition(security);
+        };
+    }
+
+    private Kind nextKind() {
+        int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++)
+            if (draw < cumulativeWeights[i])
+                return Kind.values()[i];
+        throw new AssertionError();
+    }
+
+    private EnterOrderRq newOrder(int security, int peakSize, int meq, int stopPrice) {
+        Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+        int quantity = 10 * (6 + random.nextInt(20));
+        LiveOrder order = new LiveOrder(++nextOrderId, side, 1 + random.nextInt(brokers),
+                1 + random.nextInt(shareholders), peakSize, meq, stopPrice);
+        List<LiveOrder> live = liveOrders.get(security);
+        if (live.size() == MAX_LIVE_ORDERS_PER_SECURITY)
+            live.remove(0);
+        live.add(order);
+        return enterOrderRq(security, order, quantity, false);
+    }
+
+    private EnterOrderRq update(int security, LiveOrder order) {
+        return enterOrderRq(security, order, 10 * (6 + random.nextInt(20)), true);
+    }
+
+    private EnterOrderRq enterOrderRq(int security, LiveOrder order, int quantity, boolean update) {
+        int offset = random.nextInt(-PRICE_SPREAD, PRICE_SPREAD + 1);
+        int price = order.side() == Side.BUY ? MID_PRICE - PRICE_SPREAD / 2 + offset : MID_PRICE + PRICE_SPREAD / 2 + offset;
+        EnterOrderRq rq;
+        if (order.stopPrice() > 0)
+            rq = update
+                    ? EnterOrderRq.createUpdateOrderRqWithStopPrice(++nextRequestId, isins[security], order.orderId(), LocalDateTime.now(),
+                    order.side(), quantity, price, order.brokerId(), order.shareholderId(), order.stopPrice())
+                    : EnterOrderRq.createNewOrderRqWithStopPrice(++nextRequestId, isins[security], order.orderId(), LocalDateTime.now(),
+                    order.side(), quantity, price, order.brokerId(), order.shareholderId(), 0, order.stopPrice());
+        else
+            rq = update
+                    ? EnterOrderRq.createUpdateOrderRqWithMEQ(++nextRequestId, isins[security], order.orderId(), LocalDateTime.now(),
+                    order.side(), quantity, price, order.brokerId(), order.shareholderId(), order.peakSize(), order.meq())
+                    : EnterOrderRq.createNewOrderRqWithMEQ(++nextRequestId, isins[security], order.orderId(), LocalDateTime.now(),
+                    order.side(), quantity, price, order.brokerId(), order.shareholderId(), order.peakSize(), order.meq());
+        return rq;
+    }
+
+    private DeleteOrderRq delete(int security, LiveOrder order) {
+        return new DeleteOrderRq(++nextRequestId, isins[security], order.side(), order.orderId());
+    }
+
+    private ChangeMatchingStateRq transition(int security) {
+        states[security] = states[security] == MatchingState.CONTINUOUS ? MatchingState.AUCTION : MatchingState.CONTINUOUS;
+        return ChangeMatchingStateRq.createNewChangeMatchingStateRq(isins[security], states[security]);
+    }
+}
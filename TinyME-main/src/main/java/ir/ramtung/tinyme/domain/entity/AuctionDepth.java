@@ -0,0 +1,144 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+@Getter
+public class AuctionDepth {
+    private static final int INITIAL_CAPACITY = 64;
+
+    @Getter(AccessLevel.NONE)
+    private int[] prices;
+    @Getter(AccessLevel.NONE)
+    private int[] buyQuantities;
+    @Getter(AccessLevel.NONE)
+    private int[] sellQuantities;
+    @Getter(AccessLevel.NONE)
+    private int levelCount;
+    @Getter(AccessLevel.NONE)
+    private int totalBuyQuantity;
+    @Getter(AccessLevel.NONE)
+    private boolean stale;
+    @Getter(AccessLevel.NONE)
+    private int calculatedForLastTradePrice;
+    private int reopeningPrice;
+    private int tradableQuantity;
+
+    public AuctionDepth() {
+        prices = new int[INITIAL_CAPACITY];
+        buyQuantities = new int[INITIAL_CAPACITY];
+        sellQuantities = new int[INITIAL_CAPACITY];
+        stale = true;
+    }
+
+    void add(Side side, int price, int quantity) {
+        if (quantity == 0)
+            return;
+        int level = Arrays.binarySearch(prices, 0, levelCount, price);
+        if (level < 0) {
+            level = -level - 1;
+            insertLevel(level, price);
+        }
+        if (side == Side.BUY) {
+            buyQuantities[level] += quantity;
+            totalBuyQuantity += quantity;
+        } else {
+            sellQuantities[level] += quantity;
+        }
+        if (buyQuantities[level] == 0 && sellQuantities[level] == 0)
+            removeLevel(level);
+        stale = true;
+    }
+
+    void clear() {
+        levelCount = 0;
+        totalBuyQuantity = 0;
+        stale = true;
+    }
+
+    /**
+     * Adds a level above every level already present; used to rebuild the depth
+     * from a book in ascending price order.
+     */
+    void append(int price, int buyQuantity, int sellQuantity) {
+        insertLevel(levelCount, price);
+        buyQuantities[levelCount - 1] = buyQuantity;
+        sellQuantities[levelCount - 1] = sellQuantity;
+        totalBuyQuantity += buyQuantity;
+        stale = true;
+    }
+
+    private void insertLevel(int level, int price) {
+        if (levelCount == prices.length) {
+            prices = Arrays.copyOf(prices, levelCount * 2);
+            buyQuantities = Arrays.copyOf(buyQuantities, levelCount * 2);
+            sellQuantities = Arrays.copyOf(sellQuantities, levelCount * 2);
+        }
+        int tail = levelCount - level;
+        System.arraycopy(prices, level, prices, level + 1, tail);
+        System.arraycopy(buyQuantities, level, buyQuantities, level + 1, tail);
+        System.arraycopy(sellQuantities, level, sellQuantities, level + 1, tail);
+        prices[level] = price;
+        buyQuantities[level] = 0;
+        sellQuantities[level] = 0;
+        levelCount++;
+    }
+
+    private void removeLevel(int level) {
+        int tail = levelCount - level - 1;
+        System.arraycopy(prices, level + 1, prices, level, tail);
+        System.arraycopy(buyQuantities, level + 1, buyQuantities, level, tail);
+        System.arraycopy(sellQuantities, level + 1, sellQuantities, level, tail);
+        levelCount--;
+    }
+
+    public void calculate(int lastTradePrice) {
+        if (!stale && calculatedForLastTradePrice == lastTradePrice)
+            return;
+
+        reopeningPrice = 0;
+        tradableQuantity = 0;
+        int buyQuantityAtOrAbove = totalBuyQuantity;
+        int sellQuantityAtOrBelow = 0;
+        int buyQuantityAtOrAboveLastPrice = 0;
+        int sellQuantityAtOrBelowLastPrice = 0;
+        boolean lastPriceReached = false;
+        for (int level = 0; level < levelCount; level++) {
+            int price = prices[level];
+            if (!lastPriceReached && price >= lastTradePrice) {
+                buyQuantityAtOrAboveLastPrice = buyQuantityAtOrAbove;
+                lastPriceReached = true;
+            }
+            sellQuantityAtOrBelow += sellQuantities[level];
+            if (price <= lastTradePrice)
+                sellQuantityAtOrBelowLastPrice = sellQuantityAtOrBelow;
+
+            consider(price, Math.min(buyQuantityAtOrAbove, sellQuantityAtOrBelow), lastTradePrice);
+            buyQuantityAtOrAbove -= buyQuantities[level];
+        }
+
+        int quantityWithLastPrice = Math.min(buyQuantityAtOrAboveLastPrice, sellQuantityAtOrBelowLastPrice);
+        if (quantityWithLastPrice == tradableQuantity) reopeningPrice = lastTradePrice;
+        if (tradableQuantity == 0) reopeningPrice = 0;
+
+        stale = false;
+        calculatedForLastTradePrice = lastTradePrice;
+    }
+
+    private void consider(int price, int exchangedQuantity, int lastTradePrice) {
+        if (exchangedQuantity < tradableQuantity) return;
+        if (exchangedQuantity > tradableQuantity) {
+            reopeningPrice = price;
+            tradableQuantity = exchangedQuantity;
+            return;
+        }
+        int currentDiff = Math.abs(lastTradePrice - reopeningPrice);
+        int priceDiff = Math.abs(lastTradePrice - price);
+        if (currentDiff > priceDiff)
+            reopeningPrice = price;
+        else if (currentDiff == priceDiff)
+            reopeningPrice = Math.min(reopeningPrice, price);
+    }
+}
@@ -7,27 +7,52 @@ import lombok.ToString;
 
 @ToString
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
-@Builder
 public class Broker {
     @Getter
     @EqualsAndHashCode.Include
-    private long brokerId;
+    private final long brokerId;
     @Getter
-    private String name;
-    @Getter
-    private long credit;
+    private final String name;
+    @ToString.Exclude
+    private final CreditLedger creditLedger;
+
+    @Builder
+    public Broker(long brokerId, String name, long credit) {
+        this.brokerId = brokerId;
+        this.name = name;
+        this.creditLedger = new CreditLedger(credit);
+    }
+
+    @ToString.Include(name = "credit")
+    public long getCredit() {
+        return creditLedger.balance();
+    }
+
+    public long getInitialCredit() {
+        return creditLedger.initialBalance();
+    }
+
+    public long getCreditChangeOn(int stripe) {
+        return creditLedger.changeOn(stripe);
+    }
+
+    public long getCreditChangeOutsideStages() {
+        return creditLedger.changeOutsideStages();
+    }
 
     public void increaseCreditBy(long amount) {
-        assert amount >= 0;
-        credit += amount;
+        creditLedger.release(amount);
     }
 
     public void decreaseCreditBy(long amount) {
-        assert amount >= 0;
-        credit -= amount;
+        creditLedger.withdraw(amount);
+    }
+
+    public boolean tryDecreaseCreditBy(long amount) {
+        return creditLedger.tryReserve(amount);
     }
 
     public boolean hasEnoughCredit(long amount) {
-        return credit >= amount;
+        return creditLedger.covers(amount);
     }
 }
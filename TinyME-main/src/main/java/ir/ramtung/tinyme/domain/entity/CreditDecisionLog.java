@@ -0,0 +1,63 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.Arrays;
+
+/**
+ * The outcomes of the credit reservations made while matching one security, in the
+ * order they were made. Securities on different threads reserve from the same
+ * brokers, so whether a reservation succeeds depends on timing. Outcomes are
+ * recorded here to be journaled, and on replay the journaled outcomes are handed
+ * back in the same order, so each reservation comes out as it did live. Nothing is
+ * recorded until {@link #startRecording}, and handed-back outcomes are never
+ * recorded, as they are in the journal already.
+ */
+public class CreditDecisionLog {
+    private static final boolean[] NONE = new boolean[0];
+    private boolean[] recorded = new boolean[16];
+    private int recordedCount;
+    private boolean[] replayed = NONE;
+    private int replayedCount;
+    private int replayedAt;
+    private boolean recording;
+
+    public void startRecording() {
+        recording = true;
+    }
+
+    public boolean reserve(Broker broker, long amount) {
+        if (replayedAt < replayedCount) {
+            boolean reserved = replayed[replayedAt++];
+            if (reserved)
+                broker.decreaseCreditBy(amount);
+            return reserved;
+        }
+        boolean reserved = broker.tryDecreaseCreditBy(amount);
+        if (!recording)
+            return reserved;
+        if (recordedCount == recorded.length)
+            recorded = Arrays.copyOf(recorded, recordedCount * 2);
+        recorded[recordedCount++] = reserved;
+        return reserved;
+    }
+
+    public boolean[] drain() {
+        if (recordedCount == 0)
+            return NONE;
+        boolean[] outcomes = Arrays.copyOf(recorded, recordedCount);
+        recordedCount = 0;
+        return outcomes;
+    }
+
+    public void replay(boolean[] outcomes) {
+        if (replayedCount + outcomes.length > replayed.length)
+            replayed = Arrays.copyOf(replayed, Math.max(replayed.length * 2, replayedCount + outcomes.length));
+        System.arraycopy(outcomes, 0, replayed, replayedCount, outcomes.length);
+        replayedCount += outcomes.length;
+    }
+
+    public void dropReplayed() {
+        replayed = NONE;
+        replayedCount = 0;
+        replayedAt = 0;
+    }
+}
@@ -0,0 +1,94 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import ir.ramtung.tinyme.util.StageThread;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free credit balance of a broker. Reservations are taken with a
+ * compare-and-set loop, so two securities matched on different threads can
+ * never both spend the same credit. Every change is also added to the stripe
+ * of the {@link StageThread} that made it; a stripe is only written by its own
+ * thread, so that thread can read back exactly what it has contributed. Changes
+ * made by any other thread share one atomic counter of their own.
+ */
+public class CreditLedger {
+    private final long initialBalance;
+    private final AtomicLong balance;
+    private volatile long[][] stripes = new long[0][];
+    private final AtomicLong changeOutsideStages = new AtomicLong();
+
+    public CreditLedger(long initialBalance) {
+        this.initialBalance = initialBalance;
+        this.balance = new AtomicLong(initialBalance);
+    }
+
+    public long balance() {
+        return balance.get();
+    }
+
+    public long initialBalance() {
+        return initialBalance;
+    }
+
+    public long changeOn(int stripe) {
+        long[][] cells = stripes;
+        return stripe < cells.length && cells[stripe] != null ? cells[stripe][0] : 0;
+    }
+
+    public long changeOutsideStages() {
+        return changeOutsideStages.get();
+    }
+
+    public boolean covers(long amount) {
+        return balance.get() >= amount;
+    }
+
+    public boolean tryReserve(long amount) {
+        assert amount >= 0;
+        long current;
+        do {
+            current = balance.get();
+            if (current < amount)
+                return false;
+        } while (!balance.compareAndSet(current, current - amount));
+        record(-amount);
+        return true;
+    }
+
+    public void release(long amount) {
+        assert amount >= 0;
+        balance.addAndGet(amount);
+        record(amount);
+    }
+
+    public void withdraw(long amount) {
+        assert amount >= 0;
+        balance.addAndGet(-amount);
+        record(-amount);
+    }
+
+    private void record(long change) {
+        int stripe = StageThread.currentStripe();
+        if (stripe == StageThread.NO_STRIPE) {
+            changeOutsideStages.addAndGet(change);
+            return;
+        }
+        long[][] cells = stripes;
+        long[] cell = stripe < cells.length && cells[stripe] != null ? cells[stripe] : allocateStripe(stripe);
+        cell[0] += change;
+    }
+
+    // Cells are never replaced, only the array holding them grows, so a stripe's
+    // writes survive another thread adding its own stripe.
+    private synchronized long[] allocateStripe(int stripe) {
+        long[][] cells = stripes;
+        if (stripe < cells.length && cells[stripe] != null)
+            return cells[stripe];
+        cells = Arrays.copyOf(cells, Math.max(cells.length, stripe + 1));
+        cells[stripe] = new long[1];
+        stripes = cells;
+        return cells[stripe];
+    }
+}
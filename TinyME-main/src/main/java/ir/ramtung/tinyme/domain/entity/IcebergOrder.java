@@ -46,6 +46,15 @@ public class IcebergOrder extends Order {
         this.displayedQuantity = Math.min(peakSize, quantity);
     }
 
+    void reset(long orderId, Security security, Side side, int quantity, int price,
+               Broker broker, Shareholder shareholder, LocalDateTime entryTime,
+               int peakSize, OrderStatus status, int minimumExecutionQuantity) {
+        reset(orderId, security, side, quantity, price, broker, shareholder, entryTime, status,
+                minimumExecutionQuantity, quantity);
+        this.peakSize = peakSize;
+        this.displayedQuantity = Math.min(peakSize, quantity);
+    }
+
     @Override
     public Order snapshot() {
         return this.snapshotWithQuantity(quantity);
@@ -1,19 +1,28 @@
 package ir.ramtung.tinyme.domain.entity;
 
+import ir.ramtung.tinyme.util.LongObjectHashMap;
+import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.util.Comparator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Getter
 public class InactiveOrderBook extends OrderBook{
-    private final LinkedList<StopLimitOrder> inactiveSellOrderQueue;
-    private final LinkedList<StopLimitOrder> inactiveBuyOrderQueue;
+    private final TreeMap<Integer, StopLevel> inactiveBuyLevels;
+    private final TreeMap<Integer, StopLevel> inactiveSellLevels;
+    @Getter(AccessLevel.NONE)
+    private final LongObjectHashMap<OrderNode<StopLimitOrder>> inactiveSellIndex;
+    @Getter(AccessLevel.NONE)
+    private final LongObjectHashMap<OrderNode<StopLimitOrder>> inactiveBuyIndex;
 
     public InactiveOrderBook() {
-        inactiveSellOrderQueue = new LinkedList<>();
-        inactiveBuyOrderQueue = new LinkedList<>();
+        inactiveBuyLevels = new TreeMap<>();
+        inactiveSellLevels = new TreeMap<>(Comparator.reverseOrder());
+        inactiveSellIndex = new LongObjectHashMap<>();
+        inactiveBuyIndex = new LongObjectHashMap<>();
     }
     public void DeActive(Order order) {
         assert order instanceof StopLimitOrder;
@@ -22,64 +31,90 @@ public class InactiveOrderBook extends OrderBook{
     @Override
     public void enqueue(Order order) {
         if (order instanceof StopLimitOrder stopLimitOrder) {
-            var it = getInactiveQueue(stopLimitOrder.getSide()).listIterator();
-            while (it.hasNext()) {
-                if (stopLimitOrder.queuesBefore(it.next())) {
-                    it.previous();
-                    break;
-                }
-            }
-            it.add(stopLimitOrder);
+            OrderNode<StopLimitOrder> node = getInactiveLevels(stopLimitOrder.getSide())
+                    .computeIfAbsent(stopLimitOrder.getStopPrice(), StopLevel::new)
+                    .addLast(stopLimitOrder);
+            getInactiveIndex(stopLimitOrder.getSide()).put(stopLimitOrder.getOrderId(), node);
         }
     }
 
+    private TreeMap<Integer, StopLevel> getInactiveLevels(Side side) {
+        return side == Side.BUY ? inactiveBuyLevels : inactiveSellLevels;
+    }
+
+    private LongObjectHashMap<OrderNode<StopLimitOrder>> getInactiveIndex(Side side) {
+        return side == Side.BUY ? inactiveBuyIndex : inactiveSellIndex;
+    }
+
     private LinkedList<StopLimitOrder> getInactiveQueue(Side side) {
-        return side == Side.BUY ? inactiveBuyOrderQueue : inactiveSellOrderQueue;
+        LinkedList<StopLimitOrder> queue = new LinkedList<>();
+        for (StopLevel level : getInactiveLevels(side).values())
+            level.forEach(queue::add);
+        return queue;
+    }
+
+    public LinkedList<StopLimitOrder> getInactiveBuyQueue() {
+        return getInactiveQueue(Side.BUY);
+    }
+
+    public LinkedList<StopLimitOrder> getInactiveSellQueue() {
+        return getInactiveQueue(Side.SELL);
     }
 
     @Override
     public Order findByOrderId(Side side, long orderId) {
-        for (Order order : getInactiveQueue(side)) {
-            if (order.getOrderId() == orderId) {
-                return order;
-            }
-        }
-        return null;
+        OrderNode<StopLimitOrder> node = getInactiveIndex(side).get(orderId);
+        return node == null ? null : node.getOrder();
     }
 
     @Override
     public void removeByOrderId(Side side, long orderId) {
-        var inactiveIt = getInactiveQueue(side).listIterator();
-        while (inactiveIt.hasNext()) {
-            if (inactiveIt.next().getOrderId() == orderId) {
-                inactiveIt.remove();
-                return;
-            }
-        }
+        OrderNode<StopLimitOrder> node = getInactiveIndex(side).remove(orderId);
+        if (node != null)
+            unlink(side, node);
+    }
+
+    private void unlink(Side side, OrderNode<StopLimitOrder> node) {
+        StopLevel level = (StopLevel) node.queue;
+        level.unlink(node);
+        if (level.isEmpty())
+            getInactiveLevels(side).remove(level.getStopPrice());
     }
-    private StopLimitOrder findEligibleOrder(LinkedList<StopLimitOrder> orderQueue,
-                                             int price) {
-        if (orderQueue.isEmpty()) {
+
+    private OrderNode<StopLimitOrder> findEligibleNode(Side side, int price) {
+        Map.Entry<Integer, StopLevel> best = getInactiveLevels(side).firstEntry();
+        if (best == null) {
             return null;
         }
 
-        StopLimitOrder stopLimitOrder = orderQueue.getFirst();
-        if (!stopLimitOrder.canMeetLastTradePrice(price)) {
+        OrderNode<StopLimitOrder> first = best.getValue().getFirstNode();
+        return first.getOrder().canMeetLastTradePrice(price) ? first : null;
+    }
+
+    private StopLimitOrder findEligibleOrder(Side side, int price) {
+        OrderNode<StopLimitOrder> first = findEligibleNode(side, price);
+        if (first == null) {
             return null;
         }
 
-        orderQueue.removeFirst();
+        StopLimitOrder stopLimitOrder = first.getOrder();
+        getInactiveIndex(side).remove(stopLimitOrder.getOrderId());
+        unlink(side, first);
         return stopLimitOrder;
     }
 
+    public boolean hasActivationCandidate(int lastTradePrice) {
+        return findEligibleNode(Side.SELL, lastTradePrice) != null || findEligibleNode(Side.BUY, lastTradePrice) != null;
+    }
+
     public StopLimitOrder getActivationCandidateOrder(int lastTradePrice) {
         StopLimitOrder stopLimitOrder;
-        stopLimitOrder= findEligibleOrder(inactiveSellOrderQueue, lastTradePrice);
+        stopLimitOrder= findEligibleOrder(Side.SELL, lastTradePrice);
         if (stopLimitOrder != null) {
             return stopLimitOrder;
         }
 
-        stopLimitOrder = findEligibleOrder(inactiveBuyOrderQueue, lastTradePrice);
+        stopLimitOrder = findEligibleOrder(Side.BUY, lastTradePrice);
         if (stopLimitOrder != null) {
             stopLimitOrder.getBroker().increaseCreditBy(stopLimitOrder.getValue());
         }
@@ -2,64 +2,66 @@ package ir.ramtung.tinyme.domain.entity;
 
 import ir.ramtung.tinyme.messaging.event.TradeEvent;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 public final class MatchResult {
-    private final LinkedList<Trade> trades;
+    private final List<Trade> trades;
     private final MatchingOutcome outcome;
     private final Order remainder;
-    private MatchResult(MatchingOutcome outcome, Order remainder, LinkedList<Trade> trades) {
+    private MatchResult(MatchingOutcome outcome, Order remainder, List<Trade> trades) {
         this.outcome = outcome;
         this.remainder = remainder;
         this.trades = trades;
     }
 
     public MatchResult(MatchingOutcome outcome, Order remainder) {
-        this(outcome, remainder, new LinkedList<>());
+        this(outcome, remainder, List.of());
     }
 
+    /**
+     * The list is kept as is, not copied; the caller must not change it afterwards.
+     */
     public static MatchResult executed(Order remainder, List<Trade> trades) {
         return new MatchResult(MatchingOutcome.EXECUTED,
-                remainder, new LinkedList<>(trades));
+                remainder, trades);
     }
     public static MatchResult executed(List<Trade> trades) {
         return new MatchResult(MatchingOutcome.EXECUTED_IN_AUCTION,
-                null, new LinkedList<>(trades));
+                null, trades);
     }
     public static MatchResult activated(Order order) {
         return new MatchResult(MatchingOutcome.ACTIVATED,
-                order, new LinkedList<>());
+                order, List.of());
     }
     public static MatchResult notEnoughCredit() {
         return new MatchResult(MatchingOutcome.NOT_ENOUGH_CREDIT,
-                null, new LinkedList<>());
+                null, List.of());
     }
     public static MatchResult notEnoughPositions() {
         return new MatchResult(MatchingOutcome.NOT_ENOUGH_POSITIONS,
-                null, new LinkedList<>());
+                null, List.of());
     }
     public static MatchResult notMetMEQValue() {
         return new MatchResult(MatchingOutcome.NOT_MET_MEQ_VALUE,
-                null, new LinkedList<>());
+                null, List.of());
     }
     public static MatchResult notMetLastTradePrice() {
         return new MatchResult(MatchingOutcome.NOT_MET_LAST_TRADE_PRICE,
-                null, new LinkedList<>());
+                null, List.of());
     }
     public static MatchResult stopLimitOrderIsNotAllowedInAuction() {
         return new MatchResult(MatchingOutcome.STOP_LIMIT_ORDER_IS_NOT_ALLOWED_IN_AUCTION,
-                null, new LinkedList<>());
+                null, List.of());
     }
     public static MatchResult meqOrderIsNotAllowedInAuction() {
         return new MatchResult(MatchingOutcome.MEQ_ORDER_IS_NOT_ALLOWED_IN_AUCTION,
-                null, new LinkedList<>());
+                null, List.of());
     }
     public static MatchResult executed() {
         return new MatchResult(MatchingOutcome.EXECUTED_IN_AUCTION,
-                null, new LinkedList<>());
+                null, List.of());
     }
 
     public MatchingOutcome outcome() {
@@ -69,7 +71,7 @@ public final class MatchResult {
         return remainder;
     }
 
-    public LinkedList<Trade> trades() {
+    public List<Trade> trades() {
         return trades;
     }
 
@@ -0,0 +1,12 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class MatchingContext {
+    private int lastTradePrice;
+    private int reopeningPrice;
+    private int maxTradableQuantity;
+}
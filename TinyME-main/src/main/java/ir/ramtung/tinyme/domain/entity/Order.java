@@ -31,6 +31,13 @@ public class Order {
     public Order(long orderId, Security security, Side side, int quantity, int price,
                  Broker broker, Shareholder shareholder, LocalDateTime entryTime,
                  OrderStatus status, int minimumExecutionQuantity, int initialQuantity) {
+        reset(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                status, minimumExecutionQuantity, initialQuantity);
+    }
+
+    final void reset(long orderId, Security security, Side side, int quantity, int price,
+                     Broker broker, Shareholder shareholder, LocalDateTime entryTime,
+                     OrderStatus status, int minimumExecutionQuantity, int initialQuantity) {
         this.orderId = orderId;
         this.security = security;
         this.side = side;
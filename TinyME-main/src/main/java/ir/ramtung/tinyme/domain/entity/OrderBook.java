@@ -1,111 +1,212 @@
 package ir.ramtung.tinyme.domain.entity;
 
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.util.LongIntHashMap;
+import ir.ramtung.tinyme.util.LongObjectHashMap;
+import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Getter
 public class OrderBook {
-    private final LinkedList<Order> buyQueue;
-    private final LinkedList<Order> sellQueue;
+    private final TreeMap<Integer, PriceLevel> buyLevels;
+    private final TreeMap<Integer, PriceLevel> sellLevels;
+    @Getter(AccessLevel.NONE)
+    private final LongObjectHashMap<OrderNode<Order>> buyIndex;
+    @Getter(AccessLevel.NONE)
+    private final LongObjectHashMap<OrderNode<Order>> sellIndex;
+    @Getter(AccessLevel.NONE)
+    private final LongIntHashMap sellQuantityByShareholder;
+    @Getter(AccessLevel.NONE)
+    private final AuctionDepth auctionDepth;
+    @Getter(AccessLevel.NONE)
+    private boolean auctionDepthTracked;
 
     public OrderBook() {
-        buyQueue = new LinkedList<>();
-        sellQueue = new LinkedList<>();
+        buyLevels = new TreeMap<>(Comparator.reverseOrder());
+        sellLevels = new TreeMap<>();
+        buyIndex = new LongObjectHashMap<>();
+        sellIndex = new LongObjectHashMap<>();
+        sellQuantityByShareholder = new LongIntHashMap();
+        auctionDepth = new AuctionDepth();
     }
 
     public void enqueue(Order order) {
-        List<Order> queue = getQueue(order.getSide());
-        ListIterator<Order> it = queue.listIterator();
-        while (it.hasNext()) {
-            if (order.queuesBefore(it.next())) {
-                it.previous();
-                break;
-            }
-        }
         order.queue();
-        it.add(order);
+        OrderNode<Order> node = getLevels(order.getSide())
+                .computeIfAbsent(order.getPrice(), PriceLevel::new)
+                .addLast(order);
+        getIndex(order.getSide()).put(order.getOrderId(), node);
+        quantityAdded(node, order.getTotalQuantity());
     }
 
-    public LinkedList<Order> getOpeningSellOrders(int openingPrice){
-        LinkedList<Order> result = new LinkedList<>();
-        for (var order : sellQueue){
-            if(order.getPrice() <= openingPrice){
-                result.add(order);
-            }
+    /**
+     * Returns the depth used to find the reopening price. Only auctions read it, so it
+     * is rebuilt from the book on first use and kept up to date from then on, until
+     * {@link #stopTrackingAuctionDepth} is called when the auction ends.
+     */
+    public AuctionDepth getAuctionDepth() {
+        if (!auctionDepthTracked) {
+            rebuildAuctionDepth();
+            auctionDepthTracked = true;
         }
+        return auctionDepth;
+    }
 
-        return result;
+    public void stopTrackingAuctionDepth() {
+        auctionDepthTracked = false;
     }
 
-    public LinkedList<Order> getOpeningBuyOrders(int openingPrice){
-        LinkedList<Order> result = new LinkedList<>();
-        for (var order : buyQueue){
-            if(order.getPrice() >= openingPrice){
-                result.add(order);
+    private void rebuildAuctionDepth() {
+        auctionDepth.clear();
+        Iterator<PriceLevel> buys = buyLevels.descendingMap().values().iterator();
+        Iterator<PriceLevel> sells = sellLevels.values().iterator();
+        PriceLevel buy = buys.hasNext() ? buys.next() : null;
+        PriceLevel sell = sells.hasNext() ? sells.next() : null;
+        while (buy != null || sell != null) {
+            int price = buy == null ? sell.getPrice()
+                    : sell == null ? buy.getPrice() : Math.min(buy.getPrice(), sell.getPrice());
+            int buyQuantity = 0;
+            int sellQuantity = 0;
+            if (buy != null && buy.getPrice() == price) {
+                buyQuantity = totalQuantityOf(buy);
+                buy = buys.hasNext() ? buys.next() : null;
             }
+            if (sell != null && sell.getPrice() == price) {
+                sellQuantity = totalQuantityOf(sell);
+                sell = sells.hasNext() ? sells.next() : null;
+            }
+            auctionDepth.append(price, buyQuantity, sellQuantity);
         }
+    }
+
+    private static int totalQuantityOf(PriceLevel level) {
+        int quantity = 0;
+        for (Order order : level)
+            quantity += order.getTotalQuantity();
+        return quantity;
+    }
 
-        return result;
+    public Order getFirstOpeningOrder(Side side, int openingPrice) {
+        Map.Entry<Integer, PriceLevel> best = getLevels(side).firstEntry();
+        if (best == null)
+            return null;
+        boolean tradable = side == Side.BUY ? best.getKey() >= openingPrice : best.getKey() <= openingPrice;
+        return tradable ? best.getValue().getFirst() : null;
+    }
+
+    private TreeMap<Integer, PriceLevel> getLevels(Side side) {
+        return side == Side.BUY ? buyLevels : sellLevels;
+    }
+
+    private LongObjectHashMap<OrderNode<Order>> getIndex(Side side) {
+        return side == Side.BUY ? buyIndex : sellIndex;
     }
 
     private LinkedList<Order> getQueue(Side side) {
-        return side == Side.BUY ? buyQueue : sellQueue;
+        LinkedList<Order> queue = new LinkedList<>();
+        for (PriceLevel level : getLevels(side).values())
+            level.forEach(queue::add);
+        return queue;
+    }
+
+    public LinkedList<Order> getBuyQueue() {
+        return getQueue(Side.BUY);
+    }
+
+    public LinkedList<Order> getSellQueue() {
+        return getQueue(Side.SELL);
     }
 
     public Order findByOrderId(Side side, long orderId) {
-        var queue = getQueue(side);
-        for (Order order : queue) {
-            if (order.getOrderId() == orderId)
-                return order;
-        }
-        return null;
+        OrderNode<Order> node = getIndex(side).get(orderId);
+        return node == null ? null : node.getOrder();
     }
 
     public void removeByOrderId(Side side, long orderId) {
-        var queue = getQueue(side);
-        var it = queue.listIterator();
-        while (it.hasNext()) {
-            if (it.next().getOrderId() == orderId) {
-                it.remove();
-                return;
-            }
-        }
+        OrderNode<Order> node = getIndex(side).remove(orderId);
+        if (node != null)
+            unlink(side, node);
+    }
+
+    private void unlink(Side side, OrderNode<Order> node) {
+        quantityAdded(node, -node.getOrder().getTotalQuantity());
+        PriceLevel level = (PriceLevel) node.queue;
+        level.unlink(node);
+        if (level.isEmpty())
+            getLevels(side).remove(level.getPrice());
+    }
+
+    private void quantityAdded(OrderNode<Order> node, int quantity) {
+        Order order = node.getOrder();
+        if (auctionDepthTracked)
+            auctionDepth.add(order.getSide(), ((PriceLevel) node.queue).getPrice(), quantity);
+        if (order.getSide() == Side.SELL)
+            sellQuantityByShareholder.addTo(order.getShareholder().getShareholderId(), quantity);
+    }
+
+    private void quantityChanged(Order order, int previousQuantity) {
+        OrderNode<Order> node = getIndex(order.getSide()).get(order.getOrderId());
+        if (node != null && node.getOrder() == order)
+            quantityAdded(node, order.getTotalQuantity() - previousQuantity);
+    }
+
+    public void decreaseQuantity(Order order, int amount) {
+        int previousQuantity = order.getTotalQuantity();
+        order.decreaseQuantity(amount);
+        quantityChanged(order, previousQuantity);
+    }
+
+    public void updateFromRequest(Order order, EnterOrderRq updateOrderRq) {
+        int previousQuantity = order.getTotalQuantity();
+        order.updateFromRequest(updateOrderRq);
+        quantityChanged(order, previousQuantity);
     }
 
     public Order matchWithFirst(Order newOrder) {
-        var queue = getQueue(newOrder.getSide().opposite());
-        if (newOrder.matches(queue.getFirst()))
-            return queue.getFirst();
+        Map.Entry<Integer, PriceLevel> best = getLevels(newOrder.getSide().opposite()).firstEntry();
+        if (best == null)
+            return null;
+        Order first = best.getValue().getFirst();
+        if (newOrder.matches(first))
+            return first;
         else
             return null;
     }
 
     public void putBack(Order order) {
-        LinkedList<Order> queue = getQueue(order.getSide());
         order.queue();
-        queue.addFirst(order);
+        OrderNode<Order> node = getLevels(order.getSide())
+                .computeIfAbsent(order.getPrice(), PriceLevel::new)
+                .addFirst(order);
+        getIndex(order.getSide()).put(order.getOrderId(), node);
+        quantityAdded(node, order.getTotalQuantity());
     }
 
     public void restoreOrder(Order order) {
+        Order replaced = findByOrderId(order.getSide(), order.getOrderId());
         removeByOrderId(order.getSide(), order.getOrderId());
         putBack(order);
+        if (replaced != null && replaced != order)
+            order.getSecurity().getOrderPool().replace(replaced, order);
     }
 
     public boolean hasOrderOfType(Side side) {
-        return !getQueue(side).isEmpty();
+        return !getLevels(side).isEmpty();
     }
 
     public void removeFirst(Side side) {
-        getQueue(side).removeFirst();
+        OrderNode<Order> first = getLevels(side).firstEntry().getValue().getFirstNode();
+        getIndex(side).remove(first.getOrder().getOrderId());
+        unlink(side, first);
     }
 
     public int totalSellQuantityByShareholder(Shareholder shareholder) {
-        return sellQueue.stream()
-                .filter(order -> order.getShareholder().equals(shareholder))
-                .mapToInt(Order::getTotalQuantity)
-                .sum();
+        return sellQuantityByShareholder.get(shareholder.getShareholderId());
     }
 }
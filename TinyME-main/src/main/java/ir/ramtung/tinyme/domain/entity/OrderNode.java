@@ -0,0 +1,15 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.Getter;
+
+@Getter
+public class OrderNode<T extends Order> {
+    private final T order;
+    OrderQueue<T> queue;
+    OrderNode<T> prev;
+    OrderNode<T> next;
+
+    OrderNode(T order) {
+        this.order = order;
+    }
+}
@@ -0,0 +1,109 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recycles the order instances of one security. Orders handed out by the pool are
+ * retired when they are filled, deleted or rejected, and become reusable only when
+ * the next order is taken, so nothing from the request that retired them still
+ * refers to them. Only the matching thread of the security may use the pool.
+ */
+public class OrderPool {
+    static final int MAX_FREE = 1024;
+
+    private final ArrayDeque<Order> freeOrders = new ArrayDeque<>();
+    private final ArrayDeque<IcebergOrder> freeIcebergOrders = new ArrayDeque<>();
+    private final ArrayDeque<StopLimitOrder> freeStopLimitOrders = new ArrayDeque<>();
+    private final Set<Order> issued = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Order> retired = new ArrayList<>();
+
+    public Order order(long orderId, Security security, Side side, int quantity, int price,
+                       Broker broker, Shareholder shareholder, LocalDateTime entryTime,
+                       OrderStatus status, int minimumExecutionQuantity) {
+        recycleRetired();
+        Order order = freeOrders.poll();
+        if (order == null)
+            order = new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    status, minimumExecutionQuantity);
+        else
+            order.reset(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    status, minimumExecutionQuantity, quantity);
+        issued.add(order);
+        return order;
+    }
+
+    public IcebergOrder icebergOrder(long orderId, Security security, Side side, int quantity, int price,
+                                     Broker broker, Shareholder shareholder, LocalDateTime entryTime,
+                                     int peakSize, OrderStatus status, int minimumExecutionQuantity) {
+        recycleRetired();
+        IcebergOrder order = freeIcebergOrders.poll();
+        if (order == null)
+            order = new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    peakSize, status, minimumExecutionQuantity);
+        else
+            order.reset(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    peakSize, status, minimumExecutionQuantity);
+        issued.add(order);
+        return order;
+    }
+
+    public StopLimitOrder stopLimitOrder(long orderId, Security security, Side side, int quantity, int price,
+                                         Broker broker, Shareholder shareholder, LocalDateTime entryTime,
+                                         OrderStatus status, int stopPrice) {
+        recycleRetired();
+        StopLimitOrder order = freeStopLimitOrders.poll();
+        if (order == null)
+            order = new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    status, stopPrice);
+        else
+            order.reset(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    status, stopPrice);
+        issued.add(order);
+        return order;
+    }
+
+    public void retire(Order order) {
+        if (issued.remove(order))
+            retired.add(order);
+    }
+
+    /**
+     * Called when {@code copy} takes the place of {@code order} in a book, as when a
+     * match is rolled back. The replaced instance is retired and the copy is reused
+     * in its stead once it is done.
+     */
+    public void replace(Order order, Order copy) {
+        if (issued.remove(order)) {
+            retired.add(order);
+            issued.add(copy);
+        }
+    }
+
+    public int issuedCount() {
+        return issued.size();
+    }
+
+    private void recycleRetired() {
+        for (Order order : retired) {
+            order.reset(0, null, null, 0, 0, null, null, null, OrderStatus.NEW, 0, 0);
+            if (order instanceof IcebergOrder icebergOrder)
+                offer(freeIcebergOrders, icebergOrder);
+            else if (order instanceof StopLimitOrder stopLimitOrder)
+                offer(freeStopLimitOrders, stopLimitOrder);
+            else
+                offer(freeOrders, order);
+        }
+        retired.clear();
+    }
+
+    private static <T extends Order> void offer(ArrayDeque<T> free, T order) {
+        if (free.size() < MAX_FREE)
+            free.push(order);
+    }
+}
@@ -0,0 +1,106 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class OrderQueue<T extends Order> implements Iterable<T> {
+    private OrderNode<T> head;
+    private OrderNode<T> tail;
+    private int size;
+
+    public OrderNode<T> addLast(T order) {
+        OrderNode<T> node = new OrderNode<>(order);
+        node.queue = this;
+        node.prev = tail;
+        if (tail == null)
+            head = node;
+        else
+            tail.next = node;
+        tail = node;
+        size++;
+        return node;
+    }
+
+    public OrderNode<T> addFirst(T order) {
+        OrderNode<T> node = new OrderNode<>(order);
+        node.queue = this;
+        node.next = head;
+        if (head == null)
+            tail = node;
+        else
+            head.prev = node;
+        head = node;
+        size++;
+        return node;
+    }
+
+    public OrderNode<T> insertBefore(OrderNode<T> successor, T order) {
+        if (successor == null)
+            return addLast(order);
+        if (successor == head)
+            return addFirst(order);
+        OrderNode<T> node = new OrderNode<>(order);
+        node.queue = this;
+        node.prev = successor.prev;
+        node.next = successor;
+        successor.prev.next = node;
+        successor.prev = node;
+        size++;
+        return node;
+    }
+
+    public void unlink(OrderNode<T> node) {
+        assert node.queue == this;
+        if (node.prev == null)
+            head = node.next;
+        else
+            node.prev.next = node.next;
+        if (node.next == null)
+            tail = node.prev;
+        else
+            node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.queue = null;
+        size--;
+    }
+
+    public OrderNode<T> getFirstNode() {
+        return head;
+    }
+
+    public T getFirst() {
+        if (head == null)
+            throw new NoSuchElementException();
+        return head.getOrder();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private OrderNode<T> current = head;
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public T next() {
+                if (current == null)
+                    throw new NoSuchElementException();
+                T order = current.getOrder();
+                current = current.next;
+                return order;
+            }
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.Getter;
+
+@Getter
+public class PriceLevel extends OrderQueue<Order> {
+    private final int price;
+
+    public PriceLevel(int price) {
+        this.price = price;
+    }
+}
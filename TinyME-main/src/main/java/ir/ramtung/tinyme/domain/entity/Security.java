@@ -6,16 +6,24 @@ import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.domain.service.Matcher;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.util.LongLongHashMap;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.Setter;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Getter
 @Builder
 public class Security {
+    public static final int UNREGISTERED = -1;
+
+    @Setter
+    @Builder.Default
+    private int index = UNREGISTERED;
     private String isin;
     @Builder.Default
     private int tickSize = 1;
@@ -27,21 +35,45 @@ public class Security {
     private InactiveOrderBook inactiveOrderBook = new InactiveOrderBook();
     @Builder.Default
     private MatchingState currentMatchingState = MatchingState.CONTINUOUS;
+    @Builder.Default
+    private MatchingContext matchingContext = new MatchingContext();
+    @Builder.Default
+    private OrderPool orderPool = new OrderPool();
+    @Builder.Default
+    private LongLongHashMap requestIds = new LongLongHashMap();
+    @Builder.Default
+    private Set<Shareholder> holders = new LinkedHashSet<>();
+    @Builder.Default
+    private CreditDecisionLog creditDecisions = new CreditDecisionLog();
+    private boolean activationPending;
+    private MatchingState activationTargetState;
+
+    void addHolder(Shareholder shareholder) {
+        holders.add(shareholder);
+    }
+
+    void removeHolder(Shareholder shareholder) {
+        holders.remove(shareholder);
+    }
+
+    public boolean reserveCredit(Broker broker, long amount) {
+        return creditDecisions.reserve(broker, amount);
+    }
 
     private Order createNewOrderInstance(EnterOrderRq enterOrderRq, Broker broker, Shareholder shareholder) {
         if (enterOrderRq.getPeakSize() == 0 && enterOrderRq.getStopPrice() == 0) {
-            return new Order(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
+            return orderPool.order(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
                     enterOrderRq.getQuantity(), enterOrderRq.getPrice(), broker, shareholder,
                     enterOrderRq.getEntryTime(), OrderStatus.NEW,
                     enterOrderRq.getMinimumExecutionQuantity());
         }
         if (enterOrderRq.getPeakSize() > 0 && enterOrderRq.getStopPrice() == 0) {
-            return new IcebergOrder(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
+            return orderPool.icebergOrder(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
                     enterOrderRq.getQuantity(), enterOrderRq.getPrice(), broker, shareholder,
                     enterOrderRq.getEntryTime(), enterOrderRq.getPeakSize(), OrderStatus.NEW,
                     enterOrderRq.getMinimumExecutionQuantity());
         }
-        return new StopLimitOrder(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
+        return orderPool.stopLimitOrder(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
                 enterOrderRq.getQuantity(), enterOrderRq.getPrice(), broker, shareholder,
                 enterOrderRq.getEntryTime(), OrderStatus.NEW, enterOrderRq.getStopPrice());
     }
@@ -50,16 +82,51 @@ public class Security {
         Order order = createNewOrderInstance(enterOrderRq, broker, shareholder);
 
         if (currentMatchingState == MatchingState.CONTINUOUS) {
-            return matcher.execute(order);
+            return retireIfDone(order, matcher.execute(order));
         }
 
         if (order instanceof StopLimitOrder) {
-            return MatchResult.stopLimitOrderIsNotAllowedInAuction();
+            return retireIfDone(order, MatchResult.stopLimitOrderIsNotAllowedInAuction());
         }
         if (order.getMinimumExecutionQuantity() > 0) {
-            return MatchResult.meqOrderIsNotAllowedInAuction();
+            return retireIfDone(order, MatchResult.meqOrderIsNotAllowedInAuction());
         }
-        return matcher.auctionExecute(order);
+        return retireIfDone(order, matcher.auctionExecute(order));
+    }
+
+    /**
+     * Called when an order is filled, deleted or rejected. Its instance goes back to
+     * the pool and its request id is dropped on the next {@link #evictRequestIds},
+     * unless an order with the same id is back in a book by then.
+     */
+    public void retire(Order order) {
+        orderPool.retire(order);
+        requestIds.retire(order.getOrderId());
+    }
+
+    public void evictRequestIds() {
+        requestIds.evictRetired(this::hasOrder);
+    }
+
+    private boolean hasOrder(long orderId) {
+        return orderBook.findByOrderId(Side.BUY, orderId) != null
+                || orderBook.findByOrderId(Side.SELL, orderId) != null
+                || inactiveOrderBook.findByOrderId(Side.BUY, orderId) != null
+                || inactiveOrderBook.findByOrderId(Side.SELL, orderId) != null;
+    }
+
+    private MatchResult retireIfDone(Order order, MatchResult result) {
+        switch (result.outcome()) {
+            case EXECUTED -> {
+                if (order.getTotalQuantity() == 0)
+                    retire(order);
+            }
+            case NOT_ENOUGH_CREDIT, NOT_ENOUGH_POSITIONS, NOT_MET_MEQ_VALUE,
+                    STOP_LIMIT_ORDER_IS_NOT_ALLOWED_IN_AUCTION, MEQ_ORDER_IS_NOT_ALLOWED_IN_AUCTION ->
+                    retire(order);
+            default -> { }
+        }
+        return result;
     }
 
     private Order findOrder(Side orderSide, long orderId, String forbiddenActionMsg) throws InvalidRequestException {
@@ -86,7 +153,8 @@ public class Security {
                 Message.CANNOT_DELETE_STOP_LIMIT_ORDER_IN_AUCTION_MODE);
         if (order.getSide() == Side.BUY) order.getBroker().increaseCreditBy(order.getValue());
         removeFromOrderBook(deleteOrderRq.getOrderId(), deleteOrderRq.getSide());
-        if (currentMatchingState == MatchingState.AUCTION) matcher.calculateReopeningPrice(orderBook);
+        retire(order);
+        if (currentMatchingState == MatchingState.AUCTION) matcher.calculateReopeningPrice(matchingContext, orderBook);
     }
 
     private void validateOrder(EnterOrderRq updateOrderRq, Order order) throws InvalidRequestException {
@@ -112,13 +180,11 @@ public class Security {
     }
 
     private MatchResult updateOrderWithSamePriorityAccepted(Order order, Side orderSide, Matcher matcher) {
-        if (orderSide == Side.BUY && !order.getBroker().hasEnoughCredit(order.getValue()))
+        if (orderSide == Side.BUY && !reserveCredit(order.getBroker(), order.getValue()))
             return MatchResult.notEnoughCredit();
-        if (orderSide == Side.BUY)
-            order.getBroker().decreaseCreditBy(order.getValue());
 
         if (currentMatchingState == MatchingState.AUCTION) {
-            matcher.calculateReopeningPrice(orderBook);
+            matcher.calculateReopeningPrice(matchingContext, orderBook);
             return MatchResult.executed();
         } else {
             return MatchResult.executed(null, List.of());
@@ -142,12 +208,12 @@ public class Security {
         boolean losesPriority = doesLosePriority(updateOrderRq, order, quantityIncreased);
 
         Order originalOrder = order.snapshot();
-        order.updateFromRequest(updateOrderRq);
+        orderBook.updateFromRequest(order, updateOrderRq);
         if (!losesPriority)
             return updateOrderWithSamePriorityAccepted(order, updateOrderRq.getSide(), matcher);
 
         removeFromOrderBook(updateOrderRq.getOrderId(), updateOrderRq.getSide());
-        MatchResult matchResult = executeInMatcher(currentMatchingState, matcher, order);
+        MatchResult matchResult = retireIfDone(order, executeInMatcher(currentMatchingState, matcher, order));
         MatchingOutcome outcome = matchResult.outcome();
 
         MatchResult revertResult = revertUpdateOrder(outcome, originalOrder, updateOrderRq.getSide());
@@ -161,10 +227,8 @@ public class Security {
                 outcome != MatchingOutcome.EXECUTED_IN_AUCTION) {
             orderBook.enqueue(originalOrder);
             if (newSide == Side.BUY
-                    && !originalOrder.getBroker().hasEnoughCredit(originalOrder.getValue()))
+                    && !reserveCredit(originalOrder.getBroker(), originalOrder.getValue()))
                 return MatchResult.notEnoughCredit();
-            if (newSide == Side.BUY)
-                originalOrder.getBroker().decreaseCreditBy(originalOrder.getValue());
         }
         return null;
     }
@@ -179,29 +243,46 @@ public class Security {
     }
 
     public ArrayList<MatchResult> activateStopLimitOrder(Matcher matcher, MatchingState targetState){
+        return activateStopLimitOrder(matcher, targetState, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Activates at most {@code limit} triggered stop-limit orders. When the limit is
+     * reached with orders still triggered, the cascade is left pending with its target
+     * state, to be resumed by a later call.
+     */
+    public ArrayList<MatchResult> activateStopLimitOrder(Matcher matcher, MatchingState targetState, int limit){
         Order activatedOrder = null;
         ArrayList<MatchResult> results = new ArrayList<>();
-        while ((activatedOrder = (this.getActivateCandidateOrder(matcher.getLastTradePrice()))) != null) {
+        int activated = 0;
+        while (activated < limit
+                && (activatedOrder = (this.getActivateCandidateOrder(matchingContext.getLastTradePrice()))) != null) {
+            activated++;
             results.add(MatchResult.activated(activatedOrder));
 
-            MatchResult matchResult = executeInMatcher(targetState, matcher, activatedOrder);
+            MatchResult matchResult = retireIfDone(activatedOrder, executeInMatcher(targetState, matcher, activatedOrder));
             if(targetState != MatchingState.AUCTION)
                 results.add(matchResult);
         }
+        activationPending = activated == limit
+                && inactiveOrderBook.hasActivationCandidate(matchingContext.getLastTradePrice());
+        activationTargetState = targetState;
         return results;
     }
 
     public MatchResult updateMatchingState(MatchingState newMatchingState, Matcher matcher) {
         MatchResult matchResult = null;
         if (this.currentMatchingState == MatchingState.AUCTION) {
-            matcher.calculateReopeningPrice(orderBook);
+            matcher.calculateReopeningPrice(matchingContext, orderBook);
 
-            LinkedList<Trade> trades = matcher.auctionMatch(orderBook);
+            List<Trade> trades = matcher.auctionMatch(matchingContext, orderBook);
+            if (newMatchingState != MatchingState.AUCTION)
+                orderBook.stopTrackingAuctionDepth();
             if (trades.isEmpty()) {
                 this.currentMatchingState = newMatchingState;
                 return MatchResult.executed();
             }
-            matcher.setLastTradePrice(matcher.reopeningPrice);
+            matchingContext.setLastTradePrice(matchingContext.getReopeningPrice());
             matchResult = MatchResult.executed(trades);
         }
         this.currentMatchingState = newMatchingState;
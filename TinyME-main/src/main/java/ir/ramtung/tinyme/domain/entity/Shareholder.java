@@ -5,35 +5,100 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @ToString
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Builder
 public class Shareholder {
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
     @Getter
     @EqualsAndHashCode.Include
     private long shareholderId;
     @Getter
     private String name;
-    @Getter
+    @ToString.Exclude
     @Builder.Default
-    private Map<Security, Integer> positions = new HashMap<>();
+    private volatile int[][] positionChunks = new int[0][];
+    @ToString.Exclude
+    @Builder.Default
+    private Map<Security, int[]> unregisteredPositions = new ConcurrentHashMap<>();
+
+    public int getPosition(Security security) {
+        int[] cells = unregisteredPositions.isEmpty() ? null : unregisteredPositions.get(security);
+        if (cells != null)
+            return cells[0];
+        int index = security.getIndex();
+        if (index < 0)
+            return 0;
+        int[][] chunks = positionChunks;
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk >= chunks.length || chunks[chunk] == null)
+            return 0;
+        return chunks[chunk][index & (CHUNK_SIZE - 1)];
+    }
 
     public void incPosition(Security security, int amount) {
         assert amount >= 0;
-        positions.put(security, positions.getOrDefault(security, 0) + amount);
+        int[] cells = cellsOf(security);
+        int slot = slotIn(cells, security);
+        if (cells[slot] == 0 && amount > 0)
+            security.addHolder(this);
+        cells[slot] += amount;
     }
 
     public void decPosition(Security security, int amount) {
         assert amount >= 0;
-        int currentPositions = positions.getOrDefault(security, 0);
+        int[] cells = cellsOf(security);
+        int slot = slotIn(cells, security);
+        int currentPositions = cells[slot];
         if (currentPositions < amount)
             throw new IllegalArgumentException("Amount to be decreased is greater than shareholder's current position");
-        positions.put(security, currentPositions - amount);
+        cells[slot] = currentPositions - amount;
+        if (currentPositions == amount && amount > 0)
+            security.removeHolder(this);
     }
     public boolean hasEnoughPositionsOn(Security security, int position) {
-        return positions.getOrDefault(security, 0) >= position;
+        return getPosition(security) >= position;
+    }
+
+    // A security that is not registered in a repository has no index, so its position is kept
+    // in a cell of its own; it stays there even if the security is registered later.
+    private int[] cellsOf(Security security) {
+        int[] cells = unregisteredPositions.isEmpty() ? null : unregisteredPositions.get(security);
+        if (cells != null)
+            return cells;
+        int index = security.getIndex();
+        if (index < 0)
+            return unregisteredPositions.computeIfAbsent(security, s -> new int[1]);
+        return chunkOf(index);
+    }
+
+    private static int slotIn(int[] cells, Security security) {
+        return cells.length == 1 ? 0 : security.getIndex() & (CHUNK_SIZE - 1);
+    }
+
+    private int[] chunkOf(int index) {
+        int[][] chunks = positionChunks;
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk < chunks.length && chunks[chunk] != null)
+            return chunks[chunk];
+        return allocateChunk(chunk);
+    }
+
+    // Positions of a security are only touched by the shard that owns it, but chunks are
+    // shared across shards, so they are added copy-on-write under the lock.
+    private synchronized int[] allocateChunk(int chunk) {
+        int[][] chunks = positionChunks;
+        if (chunk < chunks.length && chunks[chunk] != null)
+            return chunks[chunk];
+        chunks = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+        chunks[chunk] = new int[CHUNK_SIZE];
+        positionChunks = chunks;
+        return chunks[chunk];
     }
 }
@@ -0,0 +1,12 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.Getter;
+
+@Getter
+public class StopLevel extends OrderQueue<StopLimitOrder> {
+    private final int stopPrice;
+
+    public StopLevel(int stopPrice) {
+        this.stopPrice = stopPrice;
+    }
+}
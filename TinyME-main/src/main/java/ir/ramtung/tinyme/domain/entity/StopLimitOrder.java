@@ -33,6 +33,14 @@ public class StopLimitOrder extends Order {
         );
     }
 
+    void reset(long orderId, Security security, Side side, int quantity, int price,
+               Broker broker, Shareholder shareholder, LocalDateTime entryTime,
+               OrderStatus status, int stopPrice) {
+        reset(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                status, 0, quantity);
+        this.stopPrice = stopPrice;
+    }
+
     @Override
     public Order snapshot() {
         return new StopLimitOrder(
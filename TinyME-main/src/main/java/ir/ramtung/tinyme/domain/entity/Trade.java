@@ -1,11 +1,14 @@
 package ir.ramtung.tinyme.domain.entity;
 
-import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-@Builder
+/**
+ * A fill between two orders. The orders are referenced, not copied; only their ids
+ * and pre-trade quantities are captured, which is all that is needed to compare
+ * trades and to put a resting order back when trades are rolled back.
+ */
 @Getter
 @EqualsAndHashCode
 @ToString
@@ -13,22 +16,40 @@ public class Trade {
     Security security;
     private int price;
     private int quantity;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Order buy;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Order sell;
+    private long buyOrderId;
+    private long sellOrderId;
+    private int buyQuantity;
+    private int sellQuantity;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int buyTotalQuantity;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int sellTotalQuantity;
 
     public Trade(Security security, int price, int quantity, Order order1, Order order2) {
         this.security = security;
         this.price = price;
         this.quantity = quantity;
-        Order snapshot1 = order1.snapshot();
-        Order snapshot2 = order2.snapshot();
         if (order1.getSide() == Side.BUY) {
-            this.buy = snapshot1;
-            this.sell = snapshot2;
+            this.buy = order1;
+            this.sell = order2;
         } else {
-            this.buy = snapshot2;
-            this.sell = snapshot1;
+            this.buy = order2;
+            this.sell = order1;
         }
+        this.buyOrderId = buy.orderId;
+        this.sellOrderId = sell.orderId;
+        this.buyQuantity = visibleQuantity(buy);
+        this.sellQuantity = visibleQuantity(sell);
+        this.buyTotalQuantity = buy.quantity;
+        this.sellTotalQuantity = sell.quantity;
     }
 
     public long getTradedValue() {
@@ -39,12 +60,28 @@ public class Trade {
         sell.getBroker().increaseCreditBy(getTradedValue());
     }
 
-    public void decreaseBuyersCredit() {
-        buy.getBroker().decreaseCreditBy(getTradedValue());
+    public boolean reserveBuyersCredit() {
+        return security.reserveCredit(buy.getBroker(), getTradedValue());
     }
 
-    public boolean buyerHasEnoughCredit() {
-        return buy.getBroker().hasEnoughCredit(getTradedValue());
+    public Order buyBeforeTrade() {
+        return beforeTrade(buy, buyTotalQuantity);
     }
 
+    public Order sellBeforeTrade() {
+        return beforeTrade(sell, sellTotalQuantity);
+    }
+
+    private static int visibleQuantity(Order order) {
+        if (order instanceof IcebergOrder icebergOrder)
+            return Math.min(icebergOrder.peakSize, order.quantity);
+        return order.quantity;
+    }
+
+    private static Order beforeTrade(Order order, int totalQuantity) {
+        Order snapshot = order.snapshotWithQuantity(totalQuantity);
+        if (snapshot instanceof IcebergOrder icebergOrder)
+            icebergOrder.replenish();
+        return snapshot;
+    }
 }
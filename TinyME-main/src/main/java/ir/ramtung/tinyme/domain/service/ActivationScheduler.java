@@ -0,0 +1,10 @@
+package ir.ramtung.tinyme.domain.service;
+
+/**
+ * Arranges for the pending stop-limit cascade of a security to be resumed later on
+ * the thread that owns the security. It must not resume the cascade itself.
+ */
+@FunctionalInterface
+public interface ActivationScheduler {
+    void schedule(String isin);
+}
@@ -4,7 +4,6 @@ import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.domain.service.control.MatchingControlList;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
 import lombok.Getter;
-import lombok.Setter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -13,11 +12,6 @@ import java.util.*;
 @Getter
 @Service
 public class Matcher {
-    @Setter
-    private int lastTradePrice;
-    public int reopeningPrice = 0;
-    public int maxTradableQuantity = 0;
-
     @Autowired
     public MatchingControlList controls;
 
@@ -26,62 +20,11 @@ public class Matcher {
                 matchingOrder.getQuantity()), order, matchingOrder);
     }
 
-    private int getTradableQuantity(int orgPrice, LinkedList<Order> oppQueue, Side orgSide) {
-        int tradableQuantityOpp = 0;
-        for(Order order:oppQueue) {
-            if (orgSide == Side.BUY && order.getPrice() > orgPrice) break;
-            if (orgSide == Side.SELL && orgPrice > order.getPrice()) break;
-            tradableQuantityOpp += order.getTotalQuantity();
-        }
-        return tradableQuantityOpp;
-    }
-
-    private int getLastTradeReopeningPriceDiff() {
-        return Math.abs(lastTradePrice - this.reopeningPrice);
-    }
-    private int getLastTradeOrderPriceDiff(int orderPrice) {
-        return Math.abs(lastTradePrice - orderPrice);
-    }
-    private int getTradableQuantityForPrice(int orderPrice, Side side, OrderBook orderBook) {
-        return  (side == Side.SELL) ?
-                getTradableQuantity(orderPrice, orderBook.getBuyQueue(), side) :
-                getTradableQuantity(orderPrice, orderBook.getSellQueue(), side);
-    }
-    private void calculateBestReopeningPriceInQueue(LinkedList<Order> queue, OrderBook orderBook, Side side) {
-        int tradableQuantity = 0;
-        for(Order order: queue) {
-            tradableQuantity += order.getTotalQuantity();
-            int tradableQuantityOpp = getTradableQuantityForPrice(order.getPrice(), side, orderBook);
-            int exchangedQuantity = Math.min(tradableQuantityOpp, tradableQuantity);
-
-            if (exchangedQuantity < this.maxTradableQuantity) continue;
-            if (exchangedQuantity > this.maxTradableQuantity) {
-                this.reopeningPrice = order.getPrice();
-                this.maxTradableQuantity = exchangedQuantity;
-            }
-            else {
-                if (getLastTradeReopeningPriceDiff() > getLastTradeOrderPriceDiff(order.getPrice())) {
-                    this.reopeningPrice = order.getPrice();
-                }
-                else if (getLastTradeReopeningPriceDiff() == getLastTradeOrderPriceDiff(order.getPrice())) {
-                    this.reopeningPrice = Math.min(this.reopeningPrice, order.getPrice());
-                }
-            }
-        }
-    }
-
-    public void calculateReopeningPrice(OrderBook orderBook) {
-        this.reopeningPrice = 0;
-        this.maxTradableQuantity = 0;
-
-        calculateBestReopeningPriceInQueue(orderBook.getBuyQueue(), orderBook, Side.BUY);
-        calculateBestReopeningPriceInQueue(orderBook.getSellQueue(), orderBook, Side.SELL);
-
-        int maxQuantityWithLastPrice = Math.min(getTradableQuantity(lastTradePrice, orderBook.getBuyQueue(), Side.BUY),
-                getTradableQuantity(lastTradePrice, orderBook.getBuyQueue(), Side.SELL));
-
-        if (maxQuantityWithLastPrice == this.maxTradableQuantity) this.reopeningPrice = lastTradePrice;
-        if (maxTradableQuantity == 0) this.reopeningPrice = 0;
+    public void calculateReopeningPrice(MatchingContext context, OrderBook orderBook) {
+        AuctionDepth auctionDepth = orderBook.getAuctionDepth();
+        auctionDepth.calculate(context.getLastTradePrice());
+        context.setReopeningPrice(auctionDepth.getReopeningPrice());
+        context.setMaxTradableQuantity(auctionDepth.getTradableQuantity());
     }
 
     private MatchResult canMatchSLO(StopLimitOrder sloOrder) {
@@ -89,10 +32,11 @@ public class Matcher {
         outcome = controls.canTrade(sloOrder, null);
         if (outcome != MatchingOutcome.OK) return MatchResult.notEnoughCredit();
         InactiveOrderBook inactiveOrderBook = sloOrder.getSecurity().getInactiveOrderBook();
-        if (!sloOrder.canMeetLastTradePrice(lastTradePrice)) {
+        if (!sloOrder.canMeetLastTradePrice(sloOrder.getSecurity().getMatchingContext().getLastTradePrice())) {
             inactiveOrderBook.DeActive((Order) sloOrder);
             return MatchResult.notMetLastTradePrice();
         }
+        controls.rollbackTrade(sloOrder, null);
         return null;
     }
     public MatchResult match(Order newOrder) {
@@ -103,7 +47,7 @@ public class Matcher {
         }
 
         OrderBook orderBook = newOrder.getSecurity().getOrderBook();
-        LinkedList<Trade> trades = new LinkedList<>();
+        List<Trade> trades = List.of();
         while (orderBook.hasOrderOfType(newOrder.getSide().opposite()) && newOrder.getQuantity() > 0) {
             Order matchingOrder = orderBook.matchWithFirst(newOrder);
             if (matchingOrder == null) break;
@@ -113,6 +57,8 @@ public class Matcher {
                 controls.rollbackTrades(newOrder, trades);
                 return MatchResult.notEnoughCredit();
             }
+            if (trades.isEmpty())
+                trades = new ArrayList<>();
             trades.add(trade);
             controls.tradeAccepted(newOrder, trade);
             controls.tradeQuantityUpdated(newOrder, matchingOrder, MatchingState.CONTINUOUS);
@@ -120,25 +66,23 @@ public class Matcher {
         return MatchResult.executed(newOrder, trades);
     }
 
-    public LinkedList<Trade> auctionMatch(OrderBook orderBook) {
-        LinkedList<Trade> trades = new LinkedList<>();
+    public List<Trade> auctionMatch(MatchingContext context, OrderBook orderBook) {
+        List<Trade> trades = new ArrayList<>();
+        int reopeningPrice = context.getReopeningPrice();
         while (true) {
-            LinkedList<Order> buyOrders = orderBook.getOpeningBuyOrders(this.reopeningPrice);
-            LinkedList<Order> sellOrders = orderBook.getOpeningSellOrders(this.reopeningPrice);
-            if (buyOrders.isEmpty() || sellOrders.isEmpty()) break;
-
-            Order buyOrder = buyOrders.getFirst();
-            Order sellOrder = sellOrders.getFirst();
+            Order buyOrder = orderBook.getFirstOpeningOrder(Side.BUY, reopeningPrice);
+            Order sellOrder = orderBook.getFirstOpeningOrder(Side.SELL, reopeningPrice);
+            if (buyOrder == null || sellOrder == null) break;
 
-            Trade trade = createNewTradeFor(buyOrder, this.reopeningPrice, sellOrder);
+            Trade trade = createNewTradeFor(buyOrder, reopeningPrice, sellOrder);
 
-            buyOrder.getBroker().increaseCreditBy(buyOrder.getValue());
+            long reservedValue = buyOrder.getValue();
             controls.tradeAccepted(buyOrder, trade);
             controls.matchingAccepted(buyOrder, MatchResult.executed(List.of(trade)));
             trades.add(trade);
 
             controls.tradeQuantityUpdated(buyOrder, sellOrder, MatchingState.AUCTION);
-            buyOrder.getBroker().decreaseCreditBy(buyOrder.getValue());
+            buyOrder.getBroker().increaseCreditBy(reservedValue - trade.getTradedValue() - buyOrder.getValue());
         }
         return trades;
     }
@@ -168,7 +112,8 @@ public class Matcher {
 
         controls.orderAccepted(order);
         controls.matchingAccepted(order, result);
-        if (!result.trades().isEmpty()) lastTradePrice = result.trades().getLast().getPrice();
+        if (!result.trades().isEmpty())
+            order.getSecurity().getMatchingContext().setLastTradePrice(result.trades().get(result.trades().size() - 1).getPrice());
 
         return result;
     }
@@ -186,7 +131,7 @@ public class Matcher {
         controls.orderAccepted(order);
 
         orderBook.enqueue(order);
-        calculateReopeningPrice(orderBook);
+        calculateReopeningPrice(order.getSecurity().getMatchingContext(), orderBook);
 
         return MatchResult.executed();
     }
@@ -1,24 +1,18 @@
 package ir.ramtung.tinyme.domain.service;
 
-import com.fasterxml.jackson.databind.deser.DataFormatReaders;
 import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.EventPublisher;
-import ir.ramtung.tinyme.messaging.TradeDTO;
-import ir.ramtung.tinyme.messaging.event.*;
 import ir.ramtung.tinyme.messaging.request.*;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
-import org.apache.commons.lang3.ObjectUtils;
+import ir.ramtung.tinyme.util.LongLongHashMap;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class OrderHandler {
@@ -28,7 +22,8 @@ public class OrderHandler {
     EventPublisher eventPublisher;
     Matcher matcher;
     RequestValidator requestValidator;
-    private  HashMap<Long, Long> orderIdRqIdMap;
+    private ActivationScheduler activationScheduler;
+    private int activationQuantum = Integer.MAX_VALUE;
 
     public OrderHandler(SecurityRepository securityRepository, BrokerRepository brokerRepository,
                         ShareholderRepository shareholderRepository, EventPublisher eventPublisher, Matcher matcher) {
@@ -37,25 +32,76 @@ public class OrderHandler {
         this.shareholderRepository = shareholderRepository;
         this.eventPublisher = eventPublisher;
         this.matcher = matcher;
-        this.orderIdRqIdMap = new HashMap<Long, Long>();
-        this.requestValidator = new RequestValidator(securityRepository, brokerRepository, shareholderRepository);
+        this.requestValidator = new RequestValidator(brokerRepository, shareholderRepository);
+    }
+
+    /**
+     * Bounds the stop-limit orders activated in one go to {@code quantum}; the rest of
+     * a cascade is handed to {@code scheduler}. A null scheduler runs cascades to the end.
+     */
+    public void setActivationScheduler(ActivationScheduler scheduler, int quantum) {
+        if (scheduler != null && quantum <= 0)
+            throw new IllegalArgumentException("Activation quantum must be positive");
+        this.activationScheduler = scheduler;
+        this.activationQuantum = scheduler == null ? Integer.MAX_VALUE : quantum;
     }
 
     private void executeActivatedSLO(Security security, MatchingState targetState){
-        ArrayList<MatchResult> results = security.activateStopLimitOrder(matcher, targetState);
+        executeActivatedSLO(security, targetState, activationQuantum);
+    }
+
+    private void executeActivatedSLO(Security security, MatchingState targetState, int quantum){
+        publishActivations(security, security.activateStopLimitOrder(matcher, targetState, quantum));
+        if (security.isActivationPending())
+            activationScheduler.schedule(security.getIsin());
+    }
+
+    public Security findSecurity(String isin) {
+        return securityRepository.findSecurityByIsin(isin);
+    }
+
+    public Iterable<? extends Security> allSecurities() {
+        return securityRepository.allSecurities();
+    }
+
+    /**
+     * Runs one more quantum of the pending stop-limit cascade of a security and
+     * schedules the next one if the cascade is still not over.
+     */
+    public void continueActivation(Security security) {
+        if (security != null && security.isActivationPending())
+            executeActivatedSLO(security, security.getActivationTargetState());
+    }
+
+    /**
+     * Finishes what earlier requests left on a security: request ids of orders that
+     * are gone are evicted and a pending stop-limit cascade is resumed. The sequencer
+     * holds requests back while their security has a cascade pending, so one is only
+     * found here when a restored security is replayed.
+     */
+    private void settle(Security security) {
+        if (security == null)
+            return;
+        security.evictRequestIds();
+        if (security.isActivationPending())
+            executeActivatedSLO(security, security.getActivationTargetState());
+    }
+
+    private void publishActivations(Security security, ArrayList<MatchResult> results) {
+        LongLongHashMap requestIds = security.getRequestIds();
         for (MatchResult result: results){
             switch (result.outcome()) {
                 case NOT_ENOUGH_CREDIT:
-                    eventPublisher.publishOrderRejectedEvent(orderIdRqIdMap.get(result.remainder().getOrderId()),
+                    eventPublisher.publishOrderRejectedEvent(requestIds.get(result.remainder().getOrderId()),
                             result.remainder().getOrderId(), List.of(Message.BUYER_HAS_NOT_ENOUGH_CREDIT));
                     break;
                 case ACTIVATED:
-                    eventPublisher.publishOrderActivateEvent(orderIdRqIdMap.get(result.remainder().getOrderId()),
+                    eventPublisher.publishOrderActivateEvent(requestIds.get(result.remainder().getOrderId()),
                             result.remainder().getOrderId());
                     break;
             }
             if (!result.trades().isEmpty())
-                eventPublisher.publishIfTradeExists(orderIdRqIdMap.get(result.remainder().getOrderId()),
+                eventPublisher.publishIfTradeExists(requestIds.get(result.remainder().getOrderId()),
                         result.remainder().getOrderId(), result);
         }
     }
@@ -76,7 +122,8 @@ public class OrderHandler {
                             matchResult.remainder().getOrderId());
                 break;
             case EXECUTED_IN_AUCTION:
-                eventPublisher.publishOpeningPriceEvent(security.getIsin(), matcher.getReopeningPrice(), matcher.maxTradableQuantity);
+                eventPublisher.publishOpeningPriceEvent(security.getIsin(),
+                        security.getMatchingContext().getReopeningPrice(), security.getMatchingContext().getMaxTradableQuantity());
                 break;
             case NOT_ENOUGH_CREDIT:
             case NOT_ENOUGH_POSITIONS:
@@ -85,7 +132,7 @@ public class OrderHandler {
                 return;
             case NOT_MET_LAST_TRADE_PRICE:
                 eventPublisher.publishAcceptedOrderEvent(enterOrderRq);
-                orderIdRqIdMap.put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
+                security.getRequestIds().put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
                 return;
             case MEQ_ORDER_IS_NOT_ALLOWED_IN_AUCTION:
             case STOP_LIMIT_ORDER_IS_NOT_ALLOWED_IN_AUCTION:
@@ -93,41 +140,46 @@ public class OrderHandler {
         }
         if (enterOrderRq.getRequestType() == OrderEntryType.NEW_ORDER) {
             eventPublisher.publishAcceptedOrderEvent(enterOrderRq);
-            orderIdRqIdMap.put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
+            security.getRequestIds().put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
         } else {
             eventPublisher.publishOrderUpdatedEvent(enterOrderRq);
-            orderIdRqIdMap.put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
+            security.getRequestIds().put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
         }
         if (!matchResult.trades().isEmpty())
             eventPublisher.publishIfTradeExists(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), matchResult);
     }
 
     public void handleEnterOrder(EnterOrderRq enterOrderRq) {
+        handleEnterOrder(enterOrderRq, securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin()));
+    }
+
+    public void handleEnterOrder(EnterOrderRq enterOrderRq, Security security) {
+        settle(security);
         try {
-            requestValidator.validateRequest(enterOrderRq);
-            Security security = securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin());
-            Broker broker = brokerRepository.findBrokerById(enterOrderRq.getBrokerId());
-            Shareholder shareholder = shareholderRepository.findShareholderById(enterOrderRq.getShareholderId());
-
-            MatchResult matchResult;
-            boolean isTypeStopLimitOrder;
-            if (enterOrderRq.getRequestType() == OrderEntryType.NEW_ORDER) {
-                matchResult = security.newOrder(enterOrderRq, broker, shareholder, matcher);
-                isTypeStopLimitOrder = enterOrderRq.getStopPrice() > 0;
-            } else{
-                isTypeStopLimitOrder = security.getInactiveOrderBook()
-                        .findByOrderId(enterOrderRq.getSide(),enterOrderRq.getOrderId()) != null;
-                matchResult = security.updateOrder(enterOrderRq, matcher);
-            }
-            publishEnterOrderRq(enterOrderRq, matchResult, isTypeStopLimitOrder, security);
-            if(shouldInactiveOrdersActivate(matchResult)) {
-                executeActivatedSLO(security, null);
-            }
+            enterOrder(enterOrderRq, security, requestValidator.validateRequest(enterOrderRq, security), activationQuantum);
         } catch (InvalidRequestException e) {
             eventPublisher.publishOrderRejectedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), e.getReasons());
         }
     }
 
+    private void enterOrder(EnterOrderRq enterOrderRq, Security security, OrderParties parties,
+                            int quantum) throws InvalidRequestException {
+        MatchResult matchResult;
+        boolean isTypeStopLimitOrder;
+        if (enterOrderRq.getRequestType() == OrderEntryType.NEW_ORDER) {
+            matchResult = security.newOrder(enterOrderRq, parties.broker(), parties.shareholder(), matcher);
+            isTypeStopLimitOrder = enterOrderRq.getStopPrice() > 0;
+        } else{
+            isTypeStopLimitOrder = security.getInactiveOrderBook()
+                    .findByOrderId(enterOrderRq.getSide(),enterOrderRq.getOrderId()) != null;
+            matchResult = security.updateOrder(enterOrderRq, matcher);
+        }
+        publishEnterOrderRq(enterOrderRq, matchResult, isTypeStopLimitOrder, security);
+        if(shouldInactiveOrdersActivate(matchResult)) {
+            executeActivatedSLO(security, null, quantum);
+        }
+    }
+
     private void publishChangeMatchingStateRq(ChangeMatchingStateRq changeMatchingStateRq, MatchResult result, Security security) {
         eventPublisher.publishSecurityStateChangedEvent(changeMatchingStateRq);
 
@@ -136,10 +188,15 @@ public class OrderHandler {
             eventPublisher.publishTradeEvents(trade, security.getIsin());
     }
     public void handleChangeMatchingStateRq(ChangeMatchingStateRq changeMatchingStateRq) {
+        handleChangeMatchingStateRq(changeMatchingStateRq,
+                securityRepository.findSecurityByIsin(changeMatchingStateRq.getSecurityIsin()));
+    }
+
+    public void handleChangeMatchingStateRq(ChangeMatchingStateRq changeMatchingStateRq, Security security) {
+        settle(security);
         try {
-            requestValidator.validateRequest(changeMatchingStateRq);
+            requestValidator.validateRequest(changeMatchingStateRq, security);
 
-            Security security = securityRepository.findSecurityByIsin(changeMatchingStateRq.getSecurityIsin());
             MatchingState oldMatchingState = security.getCurrentMatchingState();
             MatchResult result = security.updateMatchingState(changeMatchingStateRq.getTargetState(), matcher);
 
@@ -154,23 +211,70 @@ public class OrderHandler {
 
     private void publishDeleteOrderRq(DeleteOrderRq deleteOrderRq, Security security) {
         eventPublisher.publishOrderDeletedEvent(deleteOrderRq);
-        orderIdRqIdMap.remove(deleteOrderRq.getOrderId());
+        security.getRequestIds().remove(deleteOrderRq.getOrderId());
 
         if (security.getCurrentMatchingState() == MatchingState.AUCTION) {
-            eventPublisher.publishOpeningPriceEvent(security.getIsin(), matcher.getReopeningPrice(), matcher.maxTradableQuantity);
+            eventPublisher.publishOpeningPriceEvent(security.getIsin(),
+                        security.getMatchingContext().getReopeningPrice(), security.getMatchingContext().getMaxTradableQuantity());
         }
     }
 
     public void handleDeleteOrder(DeleteOrderRq deleteOrderRq) {
+        handleDeleteOrder(deleteOrderRq, securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin()));
+    }
+
+    public void handleDeleteOrder(DeleteOrderRq deleteOrderRq, Security security) {
+        settle(security);
         try {
-            requestValidator.validateRequest(deleteOrderRq);
+            requestValidator.validateRequest(deleteOrderRq, security);
+            deleteOrder(deleteOrderRq, security);
+        } catch (InvalidRequestException e) {
+            eventPublisher.publishOrderRejectedEvent(deleteOrderRq, e.getReasons());
+        }
+    }
 
-            Security security = securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin());
-            security.deleteOrder(deleteOrderRq, matcher);
+    private void deleteOrder(DeleteOrderRq deleteOrderRq, Security security) throws InvalidRequestException {
+        security.deleteOrder(deleteOrderRq, matcher);
+        publishDeleteOrderRq(deleteOrderRq, security);
+    }
 
-            publishDeleteOrderRq(deleteOrderRq, security);
+    /**
+     * Runs the entries of a batch on their common security. The security is checked
+     * and settled once for the whole batch; each entry only gets its own checks.
+     * A cascade started by an entry is run to the end before the next entry, as on
+     * replay; only the cascade of the last entry is split into quanta.
+     */
+    public void handleBatch(List<BatchOrderEntry> entries, Security security) {
+        try {
+            requestValidator.validateBatchSecurity(security);
         } catch (InvalidRequestException e) {
-            eventPublisher.publishOrderRejectedEvent(deleteOrderRq, e.getReasons());
+            for (BatchOrderEntry entry : entries)
+                rejectBatchEntry(entry, e.getReasons());
+            return;
         }
+        settle(security);
+        for (int i = 0; i < entries.size(); i++) {
+            BatchOrderEntry entry = entries.get(i);
+            int quantum = i == entries.size() - 1 ? activationQuantum : Integer.MAX_VALUE;
+            try {
+                if (entry.getEnterOrderRq() != null)
+                    enterOrder(entry.getEnterOrderRq(), security,
+                            requestValidator.validateBatchEntry(entry.getEnterOrderRq(), security), quantum);
+                else if (entry.getDeleteOrderRq() != null) {
+                    requestValidator.validateBatchEntry(entry.getDeleteOrderRq());
+                    deleteOrder(entry.getDeleteOrderRq(), security);
+                }
+            } catch (InvalidRequestException e) {
+                rejectBatchEntry(entry, e.getReasons());
+            }
+        }
+    }
+
+    private void rejectBatchEntry(BatchOrderEntry entry, List<String> reasons) {
+        if (entry.getEnterOrderRq() != null)
+            eventPublisher.publishOrderRejectedEvent(entry.getEnterOrderRq().getRequestId(),
+                    entry.getEnterOrderRq().getOrderId(), reasons);
+        else if (entry.getDeleteOrderRq() != null)
+            eventPublisher.publishOrderRejectedEvent(entry.getDeleteOrderRq(), reasons);
     }
 }
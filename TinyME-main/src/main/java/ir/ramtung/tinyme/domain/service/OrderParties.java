@@ -0,0 +1,7 @@
+package ir.ramtung.tinyme.domain.service;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+
+public record OrderParties(Broker broker, Shareholder shareholder) {
+}
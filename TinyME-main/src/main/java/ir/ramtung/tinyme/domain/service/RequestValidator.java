@@ -1,6 +1,8 @@
 package ir.ramtung.tinyme.domain.service;
 
+import ir.ramtung.tinyme.domain.entity.Broker;
 import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
 import ir.ramtung.tinyme.messaging.EventPublisher;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
@@ -9,19 +11,19 @@ import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
 import ir.ramtung.tinyme.repository.BrokerRepository;
-import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
 
 import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * Validates requests against the security the handler has already resolved and
+ * hands back the entities it looked up, so nothing is looked up twice per request.
+ */
 public class RequestValidator {
-    SecurityRepository securityRepository;
     BrokerRepository brokerRepository;
     ShareholderRepository shareholderRepository;
-    public RequestValidator(SecurityRepository securityRepository, BrokerRepository brokerRepository,
-                        ShareholderRepository shareholderRepository) {
-        this.securityRepository = securityRepository;
+    public RequestValidator(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository) {
         this.brokerRepository = brokerRepository;
         this.shareholderRepository = shareholderRepository;
     }
@@ -43,51 +45,59 @@ public class RequestValidator {
         if(enterOrderRq.getStopPrice() > 0 && enterOrderRq.getPeakSize() > 0)
             errors.add(Message.ORDER_CANNOT_BE_ICEBERG_AND_STOP_LIMIT);
     }
-    private void validateEnterOrderBroker(EnterOrderRq enterOrderRq, List<String> errors) {
-        if (brokerRepository.findBrokerById(enterOrderRq.getBrokerId()) == null)
+    private Broker validateEnterOrderBroker(EnterOrderRq enterOrderRq, List<String> errors) {
+        Broker broker = brokerRepository.findBrokerById(enterOrderRq.getBrokerId());
+        if (broker == null)
             errors.add(Message.UNKNOWN_BROKER_ID);
+        return broker;
     }
-    private void validateEnterOrderShareholder(EnterOrderRq enterOrderRq, List<String> errors) {
-        if (shareholderRepository.findShareholderById(enterOrderRq.getShareholderId()) == null)
+    private Shareholder validateEnterOrderShareholder(EnterOrderRq enterOrderRq, List<String> errors) {
+        Shareholder shareholder = shareholderRepository.findShareholderById(enterOrderRq.getShareholderId());
+        if (shareholder == null)
             errors.add(Message.UNKNOWN_SHAREHOLDER_ID);
+        return shareholder;
     }
     private void validateEnterOrderPeakSize(EnterOrderRq enterOrderRq, List<String> errors) {
         if (enterOrderRq.getPeakSize() < 0 || enterOrderRq.getPeakSize() >= enterOrderRq.getQuantity())
             errors.add(Message.INVALID_PEAK_SIZE);
     }
-    private void validateEnterOrderSecurity(EnterOrderRq enterOrderRq, List<String> errors) {
-        Security security = securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin());
+    private void validateEnterOrderSecurity(EnterOrderRq enterOrderRq, Security security, List<String> errors) {
         if (security == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
-        else {
-            if (enterOrderRq.getQuantity() % security.getLotSize() != 0)
-                errors.add(Message.QUANTITY_NOT_MULTIPLE_OF_LOT_SIZE);
-            if (enterOrderRq.getPrice() % security.getTickSize() != 0)
-                errors.add(Message.PRICE_NOT_MULTIPLE_OF_TICK_SIZE);
-        }
+        else
+            validateEnterOrderSizes(enterOrderRq, security, errors);
+    }
+    private void validateEnterOrderSizes(EnterOrderRq enterOrderRq, Security security, List<String> errors) {
+        if (enterOrderRq.getQuantity() % security.getLotSize() != 0)
+            errors.add(Message.QUANTITY_NOT_MULTIPLE_OF_LOT_SIZE);
+        if (enterOrderRq.getPrice() % security.getTickSize() != 0)
+            errors.add(Message.PRICE_NOT_MULTIPLE_OF_TICK_SIZE);
     }
-    public void validateRequest(EnterOrderRq enterOrderRq) throws InvalidRequestException {
+    public OrderParties validateRequest(EnterOrderRq enterOrderRq, Security security) throws InvalidRequestException {
         List<String> errors = new LinkedList<>();
         validateEnterOrderAttributes(enterOrderRq, errors);
-        validateEnterOrderSecurity(enterOrderRq, errors);
-        validateEnterOrderBroker(enterOrderRq, errors);
-        validateEnterOrderShareholder(enterOrderRq, errors);
+        validateEnterOrderSecurity(enterOrderRq, security, errors);
+        return validateEnterOrderParties(enterOrderRq, errors);
+    }
+    private OrderParties validateEnterOrderParties(EnterOrderRq enterOrderRq, List<String> errors) throws InvalidRequestException {
+        Broker broker = validateEnterOrderBroker(enterOrderRq, errors);
+        Shareholder shareholder = validateEnterOrderShareholder(enterOrderRq, errors);
         validateEnterOrderPeakSize(enterOrderRq, errors);
         if (!errors.isEmpty()) {
             throw new InvalidRequestException(errors);
         }
+        return new OrderParties(broker, shareholder);
     }
-    private void validateChangeMatchingStateRqSecurity(ChangeMatchingStateRq changeMatchingStateRq, List<String> errors) {
-        Security security = securityRepository.findSecurityByIsin(changeMatchingStateRq.getSecurityIsin());
+    private void validateChangeMatchingStateRqSecurity(ChangeMatchingStateRq changeMatchingStateRq, Security security, List<String> errors) {
         if (security == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
         if(changeMatchingStateRq.getTargetState() != MatchingState.AUCTION &&
                 changeMatchingStateRq.getTargetState() != MatchingState.CONTINUOUS)
             errors.add(Message.INVALID_TARGET_MATCHING_STATE);
     }
-    public void validateRequest(ChangeMatchingStateRq changeMatchingStateRq) throws InvalidRequestException {
+    public void validateRequest(ChangeMatchingStateRq changeMatchingStateRq, Security security) throws InvalidRequestException {
         List<String> errors = new LinkedList<>();
-        validateChangeMatchingStateRqSecurity(changeMatchingStateRq, errors);
+        validateChangeMatchingStateRqSecurity(changeMatchingStateRq, security, errors);
         if (!errors.isEmpty()) {
             throw new InvalidRequestException(errors);
         }
@@ -96,19 +106,42 @@ public class RequestValidator {
         if (deleteOrderRq.getOrderId() <= 0)
             errors.add(Message.INVALID_ORDER_ID);
     }
-    private void validateDeleteOrderRqSecurity(DeleteOrderRq deleteOrderRq, List<String> errors) {
-        Security security = securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin());
+    private void validateDeleteOrderRqSecurity(Security security, List<String> errors) {
         if (security == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
     }
-    public void validateRequest(DeleteOrderRq deleteOrderRq) throws InvalidRequestException {
+    public void validateRequest(DeleteOrderRq deleteOrderRq, Security security) throws InvalidRequestException {
         List<String> errors = new LinkedList<>();
 
         validateDeleteOrderAttributes(deleteOrderRq, errors);
-        validateDeleteOrderRqSecurity(deleteOrderRq, errors);
+        validateDeleteOrderRqSecurity(security, errors);
 
         if (!errors.isEmpty()) {
             throw new InvalidRequestException(errors);
         }
     }
+    public void validateBatchSecurity(Security security) throws InvalidRequestException {
+        List<String> errors = new LinkedList<>();
+        validateDeleteOrderRqSecurity(security, errors);
+        if (!errors.isEmpty()) {
+            throw new InvalidRequestException(errors);
+        }
+    }
+    /**
+     * Validates one order of a batch whose security {@link #validateBatchSecurity} has
+     * already accepted, so only the checks that depend on the order itself are run.
+     */
+    public OrderParties validateBatchEntry(EnterOrderRq enterOrderRq, Security security) throws InvalidRequestException {
+        List<String> errors = new LinkedList<>();
+        validateEnterOrderAttributes(enterOrderRq, errors);
+        validateEnterOrderSizes(enterOrderRq, security, errors);
+        return validateEnterOrderParties(enterOrderRq, errors);
+    }
+    public void validateBatchEntry(DeleteOrderRq deleteOrderRq) throws InvalidRequestException {
+        List<String> errors = new LinkedList<>();
+        validateDeleteOrderAttributes(deleteOrderRq, errors);
+        if (!errors.isEmpty()) {
+            throw new InvalidRequestException(errors);
+        }
+    }
 }
@@ -6,7 +6,7 @@ import ir.ramtung.tinyme.domain.entity.Order;
 import ir.ramtung.tinyme.domain.entity.Trade;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
 
-import java.util.LinkedList;
+import java.util.List;
 
 public interface MatchingControl {
     default MatchingOutcome canStartMatching(Order order) { return MatchingOutcome.OK; }
@@ -15,10 +15,13 @@ public interface MatchingControl {
     default void matchingAccepted(Order order, MatchResult result) {}
     default void orderAccepted(Order order) {}
 
+    default void rollbackMatching(Order order, MatchResult result) {}
+
     default MatchingOutcome canTrade(Order newOrder, Trade trade) { return MatchingOutcome.OK; }
     default void tradeAccepted(Order newOrder, Trade trade) {}
+    default void rollbackTrade(Order newOrder, Trade trade) {}
 
     default void tradeQuantityUpdated(Order newOrder, Order matchingOrder , MatchingState mode) {}
 
-    default void rollbackTrades(Order newOrder, LinkedList<Trade> trades) {}
+    default void rollbackTrades(Order newOrder, List<Trade> trades) {}
 }
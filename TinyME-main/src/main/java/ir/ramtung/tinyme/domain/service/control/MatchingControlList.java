@@ -9,7 +9,6 @@ import ir.ramtung.tinyme.messaging.request.MatchingState;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.LinkedList;
 import java.util.List;
 
 @Component
@@ -31,9 +30,11 @@ public class MatchingControlList {
 //        }
 //    }
     public MatchingOutcome canAcceptMatching(Order order, MatchResult result) {
-        for (MatchingControl control : controlList) {
-            MatchingOutcome outcome = control.canAcceptMatching(order, result);
+        for (int i = 0; i < controlList.size(); i++) {
+            MatchingOutcome outcome = controlList.get(i).canAcceptMatching(order, result);
             if (outcome != MatchingOutcome.OK) {
+                for (int j = 0; j < i; j++)
+                    controlList.get(j).rollbackMatching(order, result);
                 return outcome;
             }
         }
@@ -52,15 +53,23 @@ public class MatchingControlList {
     }
 
     public MatchingOutcome canTrade(Order newOrder, Trade trade) {
-        for (MatchingControl control : controlList) {
-            MatchingOutcome outcome = control.canTrade(newOrder, trade);
+        for (int i = 0; i < controlList.size(); i++) {
+            MatchingOutcome outcome = controlList.get(i).canTrade(newOrder, trade);
             if (outcome != MatchingOutcome.OK) {
+                for (int j = 0; j < i; j++)
+                    controlList.get(j).rollbackTrade(newOrder, trade);
                 return outcome;
             }
         }
         return MatchingOutcome.OK;
     }
 
+    public void rollbackTrade(Order newOrder, Trade trade) {
+        for (MatchingControl control : controlList) {
+            control.rollbackTrade(newOrder, trade);
+        }
+    }
+
     public void tradeAccepted(Order newOrder, Trade trade) {
         for (MatchingControl control : controlList) {
             control.tradeAccepted(newOrder, trade);
@@ -71,7 +80,7 @@ public class MatchingControlList {
             control.tradeQuantityUpdated(newOrder, matchingOrder, mode);
         }
     }
-    public void rollbackTrades(Order newOrder, LinkedList<Trade> trades) {
+    public void rollbackTrades(Order newOrder, List<Trade> trades) {
         for (MatchingControl control2 : controlList) {
             control2.rollbackTrades(newOrder, trades);
         }
@@ -14,15 +14,17 @@ public class QuantityControl implements MatchingControl {
             iOrder.replenish();
             if (iOrder.getQuantity() > 0){
                 orderBook.enqueue(iOrder);
+                return;
             }
         }
+        order.getSecurity().retire(order);
     }
     @Override
     public void tradeQuantityUpdated(Order newOrder, Order matchingOrder, MatchingState mode) {
         OrderBook orderBook = newOrder.getSecurity().getOrderBook();
         int tradedQuantity = Math.min(newOrder.getQuantity(), matchingOrder.getQuantity());
-        matchingOrder.decreaseQuantity(tradedQuantity);
-        newOrder.decreaseQuantity(tradedQuantity);
+        orderBook.decreaseQuantity(matchingOrder, tradedQuantity);
+        orderBook.decreaseQuantity(newOrder, tradedQuantity);
 
         if (newOrder.getQuantity() < matchingOrder.getQuantity() && mode == MatchingState.CONTINUOUS) {
             newOrder.makeQuantityZero();
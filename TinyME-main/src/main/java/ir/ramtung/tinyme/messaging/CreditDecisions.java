@@ -0,0 +1,18 @@
+package ir.ramtung.tinyme.messaging;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Journal record of the credit reservation outcomes of one turn on a security,
+ * tagged with the number of the last cut its shard had passed.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreditDecisions {
+    private long cut;
+    private String securityIsin;
+    private boolean[] outcomes;
+}
@@ -6,29 +6,223 @@ import ir.ramtung.tinyme.messaging.event.*;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.util.RingBuffer;
+import ir.ramtung.tinyme.util.StageThread;
+import jakarta.annotation.PreDestroy;
+import jakarta.jms.Connection;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.JMSRuntimeException;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+/**
+ * Publishes the events of each request in order. With asynchronous publishing the
+ * events are handed to a publisher thread that sends them in transacted batches.
+ * A batch that fails on the broker connection is kept and retried on a fresh
+ * connection with growing delays; meanwhile the outbound buffer fills up and holds
+ * back the matching shards. Only when the publisher is shutting down does it give up
+ * and report the lost batch. An event that cannot be converted to a message would
+ * fail every retry, so it is logged and dropped on its own.
+ */
 @Component
 public class EventPublisher {
+    private static final long MIN_RETRY_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int ATTEMPTS_WHILE_CLOSING = 3;
+
     private final Logger log = Logger.getLogger(this.getClass().getName());
     private final JmsTemplate jmsTemplate;
-    @Value("${responseQueue}")
-    private String responseQueue;
+    private final String responseQueue;
+    private final boolean asyncPublishing;
+    private final int sendBatchSize;
+    private final long maxSendDelayNanos;
+    private final RingBuffer<List<Event>> outbound;
+    private final StageThread<List<Event>> publisherThread;
+    private final ThreadLocal<List<Event>> requestEvents = new ThreadLocal<>();
+    private final List<Event> pendingEvents = new ArrayList<>();
+    private long firstPendingAt;
+    private volatile boolean muted;
+    private volatile boolean closing;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
 
-    public EventPublisher(JmsTemplate jmsTemplate) {
+    public EventPublisher(JmsTemplate jmsTemplate,
+                          @Value("${responseQueue}") String responseQueue,
+                          @Value("${asyncPublishing:true}") boolean asyncPublishing,
+                          @Value("${outboundQueueCapacity:4096}") int outboundQueueCapacity,
+                          @Value("${sendBatchSize:256}") int sendBatchSize,
+                          @Value("${maxSendDelayMillis:2}") long maxSendDelayMillis) {
         this.jmsTemplate = jmsTemplate;
+        this.responseQueue = responseQueue;
+        this.asyncPublishing = asyncPublishing;
+        this.sendBatchSize = sendBatchSize;
+        this.maxSendDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxSendDelayMillis);
+        if (asyncPublishing) {
+            this.outbound = new RingBuffer<>(outboundQueueCapacity);
+            this.publisherThread = new StageThread<>("event-publisher", outbound, this::send, sendBatchSize);
+            this.publisherThread.start();
+        } else {
+            this.outbound = null;
+            this.publisherThread = null;
+        }
+    }
+
+    public void beginRequest() {
+        requestEvents.set(new ArrayList<>());
+    }
+
+    public void collapseRequestEvents(long requestId, String securityIsin) {
+        List<Event> events = requestEvents.get();
+        if (events == null || events.isEmpty())
+            return;
+        List<Event> collapsed = new ArrayList<>();
+        collapsed.add(new BatchProcessedEvent(requestId, securityIsin, events));
+        requestEvents.set(collapsed);
+    }
+
+    public void endRequest() {
+        List<Event> events = requestEvents.get();
+        if (events == null)
+            return;
+        requestEvents.remove();
+        if (events.isEmpty())
+            return;
+        if (asyncPublishing)
+            outbound.put(events);
+        else
+            events.forEach(this::sendNow);
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
     }
 
     private void publish(Event event) {
+        if (muted)
+            return;
+        List<Event> events = requestEvents.get();
+        if (events != null)
+            events.add(event);
+        else if (asyncPublishing)
+            outbound.put(List.of(event));
+        else
+            sendNow(event);
+    }
+
+    private void sendNow(Event event) {
         log.info("Published : " + event);
         jmsTemplate.convertAndSend(responseQueue, event);
     }
+
+    private void send(List<Event> events, boolean endOfBatch) {
+        if (pendingEvents.isEmpty())
+            firstPendingAt = System.nanoTime();
+        pendingEvents.addAll(events);
+        if (pendingEvents.size() >= sendBatchSize
+                || (endOfBatch && outbound.isEmpty())
+                || System.nanoTime() - firstPendingAt >= maxSendDelayNanos)
+            flush();
+    }
+
+    private void flush() {
+        long delay = MIN_RETRY_DELAY_NANOS;
+        for (int attempt = 1; !trySend(); attempt++) {
+            if (closing && attempt >= ATTEMPTS_WHILE_CLOSING)
+                throw new IllegalStateException("Could not publish " + pendingEvents.size() + " events");
+            LockSupport.parkNanos(delay);
+            delay = Math.min(delay << 1, MAX_RETRY_DELAY_NANOS);
+        }
+        pendingEvents.clear();
+    }
+
+    /**
+     * Sends the pending events in one transaction. Returns false only when the broker
+     * connection failed and the batch is worth retrying; anything else is not going
+     * to succeed on a retry, so it is logged and dropped instead.
+     */
+    private boolean trySend() {
+        try {
+            Session session = session();
+            MessageConverter converter = jmsTemplate.getMessageConverter();
+            Iterator<Event> events = pendingEvents.iterator();
+            while (events.hasNext()) {
+                jakarta.jms.Message message = toMessage(converter, events.next(), session);
+                if (message == null)
+                    events.remove();
+                else
+                    producer.send(message);
+            }
+            session.commit();
+            pendingEvents.forEach(event -> log.info("Published : " + event));
+            return true;
+        } catch (JMSException | JMSRuntimeException | JmsException e) {
+            log.log(Level.WARNING, "Could not publish " + pendingEvents.size() + " events, retrying", e);
+            closeSession();
+            return false;
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, "Dropping " + pendingEvents.size() + " events that could not be published", e);
+            closeSession();
+            return true;
+        }
+    }
+
+    private jakarta.jms.Message toMessage(MessageConverter converter, Event event, Session session) throws JMSException {
+        try {
+            return converter.toMessage(event, session);
+        } catch (MessageConversionException | IllegalArgumentException e) {
+            log.log(Level.SEVERE, "Dropping event that cannot be converted : " + event, e);
+            return null;
+        }
+    }
+
+    private Session session() throws JMSException {
+        if (session == null) {
+            connection = jmsTemplate.getConnectionFactory().createConnection();
+            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            Destination destination = jmsTemplate.getDestinationResolver()
+                    .resolveDestinationName(session, responseQueue, false);
+            producer = session.createProducer(destination);
+        }
+        return session;
+    }
+
+    private void closeSession() {
+        JmsUtils.closeMessageProducer(producer);
+        JmsUtils.closeSession(session);
+        JmsUtils.closeConnection(connection);
+        producer = null;
+        session = null;
+        connection = null;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (publisherThread == null)
+            return;
+        closing = true;
+        publisherThread.halt();
+        if (!pendingEvents.isEmpty())
+            flush();
+        closeSession();
+    }
     public void publishSecurityStateChangedEvent(ChangeMatchingStateRq changeMatchingStateRq) {
         this.publish(new SecurityStateChangedEvent(changeMatchingStateRq.getSecurityIsin(),
                 changeMatchingStateRq.getTargetState()));
@@ -63,7 +257,7 @@ public class EventPublisher {
     public void publishTradeEvents(Trade trade, String isin) {
         this.publish(
                 new TradeEvent(isin, trade.getPrice(), trade.getQuantity(),
-                        trade.getBuy().getOrderId(), trade.getSell().getOrderId())
+                        trade.getBuyOrderId(), trade.getSellOrderId())
         );
     }
     public void publishOrderDeletedEvent(DeleteOrderRq deleteOrderRq) {
@@ -1,5 +1,9 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.messaging.codec.BinaryAwareMessageConverter;
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import ir.ramtung.tinyme.messaging.codec.MessageFormat;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
@@ -8,11 +12,13 @@ import org.springframework.jms.support.converter.MessageType;
 
 @Configuration
 public class MessagingConfig {
+    private static final String TYPE_ID_PROPERTY = "_type";
+
     @Bean
-    public MessageConverter jacksonJmsMessageConverter() {
+    public MessageConverter jmsMessageConverter(@Value("${responseQueueFormat:JSON}") MessageFormat responseQueueFormat) {
         MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
         converter.setTargetType(MessageType.TEXT);
-        converter.setTypeIdPropertyName("_type");
-        return converter;
+        converter.setTypeIdPropertyName(TYPE_ID_PROPERTY);
+        return new BinaryAwareMessageConverter(converter, new BinaryCodec(), responseQueueFormat, TYPE_ID_PROPERTY);
     }
 }
@@ -1,9 +1,9 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.messaging.request.BatchEnterOrderRq;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import ir.ramtung.tinyme.domain.service.OrderHandler;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.stereotype.Component;
 
@@ -12,26 +12,31 @@ import java.util.logging.Logger;
 @Component
 public class RequestDispatcher {
     private final Logger log = Logger.getLogger(this.getClass().getName());
-    private final OrderHandler orderHandler;
+    private final RequestSequencer requestSequencer;
 
-    public RequestDispatcher(OrderHandler orderHandler) {
-        this.orderHandler = orderHandler;
+    public RequestDispatcher(RequestSequencer requestSequencer) {
+        this.requestSequencer = requestSequencer;
     }
 
     @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.EnterOrderRq'")
     public void receiveEnterOrderRq(EnterOrderRq enterOrderRq) {
         log.info("Received message: " + enterOrderRq);
-        orderHandler.handleEnterOrder(enterOrderRq);
+        requestSequencer.submitEnterOrder(enterOrderRq);
+    }
+    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.BatchEnterOrderRq'")
+    public void receiveBatchEnterOrderRq(BatchEnterOrderRq batchEnterOrderRq) {
+        log.info("Received batch " + batchEnterOrderRq.getRequestId() + " with " + batchEnterOrderRq.getEntries().size() + " entries");
+        requestSequencer.submitBatch(batchEnterOrderRq);
     }
     @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq'")
     public void receiveChangeMatchingStateRq(ChangeMatchingStateRq changeMatchingStateRq) {
         log.info("Received message: " + changeMatchingStateRq);
-        orderHandler.handleChangeMatchingStateRq(changeMatchingStateRq);
+        requestSequencer.submitChangeMatchingState(changeMatchingStateRq);
     }
 
     @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.DeleteOrderRq'")
     public void receiveDeleteOrderRq(DeleteOrderRq deleteOrderRq) {
         log.info("Received message: " + deleteOrderRq);
-        orderHandler.handleDeleteOrder(deleteOrderRq);
+        requestSequencer.submitDeleteOrder(deleteOrderRq);
     }
 }
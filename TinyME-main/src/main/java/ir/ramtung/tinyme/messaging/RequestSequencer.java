@@ -0,0 +1,433 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.request.BatchEnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.BatchOrderEntry;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.CommandJournal;
+import ir.ramtung.tinyme.util.RingBuffer;
+import ir.ramtung.tinyme.util.StageThread;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Routes requests to a fixed set of shards by security ISIN. Every shard owns one
+ * matching thread, so all requests of a security are handled in arrival order by
+ * the same thread and different securities are matched in parallel. Each shard
+ * drains its ring buffer in batches of up to {@code shardBatchSize} requests.
+ * When a {@link CommandJournal} is present, every request is journaled before it is
+ * handed to its shard, and journal order matches the order each shard sees. Only
+ * journaling is serialized across shards; a shard whose buffer is full holds back
+ * the submitters of that shard alone. Each
+ * shard also remembers which securities it touched since the last {@link #cut}.
+ * A stop-limit cascade activates at most {@code activationQuantum} orders per turn;
+ * the rest of it is put back on the shard behind the requests already waiting, and
+ * requests of the same security are held back until the cascade is over, so the
+ * outcome does not depend on where the cascade was split. Shard {@code i} runs as
+ * stage stripe {@code i}. Shards reserve credit from the same brokers at the same
+ * time, so with a journal, the outcomes of every turn that reserved credit are
+ * journaled as {@link CreditDecisions}, and replay hands them back instead of
+ * deciding again.
+ */
+@Component
+@SuppressWarnings("unchecked")
+public class RequestSequencer {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final OrderHandler orderHandler;
+    private final EventPublisher eventPublisher;
+    private final CommandJournal journal;
+    private final RingBuffer<Runnable>[] inbound;
+    private final StageThread<Runnable>[] shards;
+    private final Set<String>[] changedIsins;
+    private final Map<String, ArrayDeque<HeldRequest>>[] heldRequests;
+    private final Set<String>[] scheduledIsins;
+    private final ArrayDeque<String>[] overflowIsins;
+    private final Object intakeLock = new Object();
+    private final long[] nextTicket;
+    private final long[] servedTicket;
+    private final Object[] enqueueLocks;
+    private final long[] shardCuts;
+    private long cutCount;
+    private final int activationQuantum;
+
+    /**
+     * A consistent cut of the engine: the journal sequence it corresponds to, its
+     * number and, for every security that still held back requests journaled before
+     * it, the sequence of the first of them.
+     */
+    public record Cut(long sequence, long number, Map<String, Long> heldBack) {
+        public long replayFrom() {
+            long from = sequence + 1;
+            for (long heldSequence : heldBack.values())
+                from = Math.min(from, heldSequence);
+            return from;
+        }
+    }
+
+    private record HeldRequest(long sequence, Consumer<Security> task) {
+    }
+
+    public RequestSequencer(OrderHandler orderHandler, EventPublisher eventPublisher, Optional<CommandJournal> journal,
+                            @Value("${matchingShards:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int shardCount,
+                            @Value("${shardQueueCapacity:1024}") int queueCapacity,
+                            @Value("${shardBatchSize:64}") int batchSize,
+                            @Value("${activationQuantum:32}") int activationQuantum) {
+        if (shardCount <= 0 || queueCapacity <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("Shard count, queue capacity and batch size must be positive");
+        this.orderHandler = orderHandler;
+        this.eventPublisher = eventPublisher;
+        this.journal = journal.orElse(null);
+        this.inbound = new RingBuffer[shardCount];
+        this.shards = new StageThread[shardCount];
+        this.changedIsins = new Set[shardCount];
+        this.heldRequests = new Map[shardCount];
+        this.scheduledIsins = new Set[shardCount];
+        this.overflowIsins = new ArrayDeque[shardCount];
+        this.nextTicket = new long[shardCount];
+        this.servedTicket = new long[shardCount];
+        this.enqueueLocks = new Object[shardCount];
+        this.shardCuts = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            enqueueLocks[i] = new Object();
+            changedIsins[i] = new HashSet<>();
+            heldRequests[i] = new HashMap<>();
+            scheduledIsins[i] = new HashSet<>();
+            overflowIsins[i] = new ArrayDeque<>();
+            inbound[i] = new RingBuffer<>(queueCapacity);
+            shards[i] = new StageThread<>("matching-shard-" + i, inbound[i],
+                    (request, endOfBatch) -> run(shard, request), batchSize, i);
+            shards[i].start();
+        }
+        orderHandler.setActivationScheduler(this::scheduleActivation, activationQuantum);
+        this.activationQuantum = activationQuantum;
+    }
+
+    public void submitEnterOrder(EnterOrderRq enterOrderRq) {
+        submit(enterOrderRq.getSecurityIsin(), enterOrderRq, security -> orderHandler.handleEnterOrder(enterOrderRq, security));
+    }
+
+    public void submitDeleteOrder(DeleteOrderRq deleteOrderRq) {
+        submit(deleteOrderRq.getSecurityIsin(), deleteOrderRq, security -> orderHandler.handleDeleteOrder(deleteOrderRq, security));
+    }
+
+    public void submitChangeMatchingState(ChangeMatchingStateRq changeMatchingStateRq) {
+        submit(changeMatchingStateRq.getSecurityIsin(), changeMatchingStateRq,
+                security -> orderHandler.handleChangeMatchingStateRq(changeMatchingStateRq, security));
+    }
+
+    public void submitBatch(BatchEnterOrderRq batchEnterOrderRq) {
+        Map<String, List<BatchOrderEntry>> entriesByIsin = entriesByIsin(batchEnterOrderRq);
+        long requestId = batchEnterOrderRq.getRequestId();
+        long sequence;
+        Map<String, Long> tickets = new LinkedHashMap<>();
+        synchronized (intakeLock) {
+            sequence = journal == null ? 0 : journal.append(batchEnterOrderRq);
+            for (String isin : entriesByIsin.keySet())
+                tickets.put(isin, nextTicket[shardIndexOf(isin)]++);
+        }
+        entriesByIsin.forEach((isin, entries) -> enqueue(isin, tickets.get(isin), sequence, security -> {
+            orderHandler.handleBatch(entries, security);
+            eventPublisher.collapseRequestEvents(requestId, isin);
+        }));
+    }
+
+    private void submit(String isin, Object request, Consumer<Security> task) {
+        long sequence;
+        long ticket;
+        synchronized (intakeLock) {
+            sequence = journal == null ? 0 : journal.append(request);
+            ticket = nextTicket[shardIndexOf(isin)]++;
+        }
+        enqueue(isin, ticket, sequence, task);
+    }
+
+    private void enqueue(String isin, long ticket, long sequence, Consumer<Security> task) {
+        int shard = shardIndexOf(isin);
+        enqueue(shard, ticket, () -> {
+            changedIsins[shard].add(isin);
+            runOrHold(shard, isin, sequence, task);
+        });
+    }
+
+    /**
+     * Puts a request on its shard once every request that took an earlier ticket for
+     * the shard is there. Tickets are taken together with the journal sequence, so a
+     * shard sees its requests in journal order, while a full shard only holds back
+     * the submitters waiting on that shard.
+     */
+    private void enqueue(int shard, long ticket, Runnable request) {
+        Object lock = enqueueLocks[shard];
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (servedTicket[shard] != ticket) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            try {
+                inbound[shard].put(request);
+            } finally {
+                servedTicket[shard]++;
+                lock.notifyAll();
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void runOrHold(int shard, String isin, long sequence, Consumer<Security> task) {
+        Security security = orderHandler.findSecurity(isin);
+        ArrayDeque<HeldRequest> held = heldRequests[shard].get(isin);
+        if (held == null) {
+            if (!isActivationPending(security)) {
+                runTurn(shard, security, task);
+                return;
+            }
+            held = new ArrayDeque<>();
+            heldRequests[shard].put(isin, held);
+        }
+        held.add(new HeldRequest(sequence, task));
+        scheduleActivation(isin);
+    }
+
+    private void scheduleActivation(String isin) {
+        int shard = shardIndexOf(isin);
+        if (scheduledIsins[shard].add(isin) && !inbound[shard].offer(() -> continueActivation(shard, isin)))
+            overflowIsins[shard].add(isin);
+    }
+
+    /**
+     * Runs one quantum of the pending cascade of a security, or, once the cascade is
+     * over, the first request that was held back behind it.
+     */
+    private void continueActivation(int shard, String isin) {
+        scheduledIsins[shard].remove(isin);
+        changedIsins[shard].add(isin);
+        Security security = orderHandler.findSecurity(isin);
+        ArrayDeque<HeldRequest> held = heldRequests[shard].get(isin);
+        if (isActivationPending(security)) {
+            runTurn(shard, security, orderHandler::continueActivation);
+            if (held != null)
+                scheduleActivation(isin);
+            return;
+        }
+        if (held == null)
+            return;
+        HeldRequest request = held.poll();
+        if (held.isEmpty())
+            heldRequests[shard].remove(isin);
+        else
+            scheduleActivation(isin);
+        runTurn(shard, security, request.task());
+    }
+
+    private void runTurn(int shard, Security security, Consumer<Security> task) {
+        try {
+            task.accept(security);
+        } finally {
+            journalCreditDecisions(shardCuts[shard], security);
+        }
+    }
+
+    private void journalCreditDecisions(long cut, Security security) {
+        if (journal == null || security == null)
+            return;
+        boolean[] outcomes = security.getCreditDecisions().drain();
+        if (outcomes.length > 0)
+            journal.append(new CreditDecisions(cut, security.getIsin(), outcomes));
+    }
+
+    private static boolean isActivationPending(Security security) {
+        return security != null && security.isActivationPending();
+    }
+
+    private void retryOverflow(int shard) {
+        ArrayDeque<String> overflow = overflowIsins[shard];
+        while (!overflow.isEmpty()) {
+            String isin = overflow.peek();
+            if (!inbound[shard].offer(() -> continueActivation(shard, isin)))
+                return;
+            overflow.poll();
+        }
+    }
+
+    /**
+     * Takes a consistent cut of the engine without stopping intake. A marker is put
+     * on every shard at one journal position; each shard hands the securities it
+     * changed since the previous cut to {@code onShard} on its own thread and goes
+     * straight on with its next request. Only the caller waits for every marker.
+     * Requests held back behind a cascade at the marker are not part of the cut;
+     * they are reported in {@link Cut#heldBack} so that recovery replays them.
+     * Credit decisions journaled after a shard passed the marker carry the number
+     * of the cut.
+     */
+    public Cut cut(BiConsumer<Integer, Set<String>> onShard) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(shards.length);
+        AtomicBoolean failed = new AtomicBoolean();
+        Map<String, Long> heldBack = new ConcurrentHashMap<>();
+        long sequence;
+        long number;
+        long[] tickets = new long[shards.length];
+        synchronized (intakeLock) {
+            sequence = journal == null ? 0 : journal.lastSequence();
+            number = ++cutCount;
+            for (int i = 0; i < shards.length; i++)
+                tickets[i] = nextTicket[i]++;
+        }
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            enqueue(shard, tickets[shard], () -> {
+                try {
+                    shardCuts[shard] = number;
+                    heldRequests[shard].forEach((isin, held) -> heldBack.put(isin, held.peek().sequence()));
+                    onShard.accept(shard, changedIsins[shard]);
+                    changedIsins[shard].clear();
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failed.get())
+            throw new IllegalStateException("Cut did not complete on every shard");
+        return new Cut(sequence, number, heldBack);
+    }
+
+    private static Map<String, List<BatchOrderEntry>> entriesByIsin(BatchEnterOrderRq batchEnterOrderRq) {
+        Map<String, List<BatchOrderEntry>> entriesByIsin = new LinkedHashMap<>();
+        for (BatchOrderEntry entry : batchEnterOrderRq.getEntries())
+            entriesByIsin.computeIfAbsent(entry.securityIsin(), isin -> new ArrayList<>()).add(entry);
+        return entriesByIsin;
+    }
+
+    /**
+     * Re-applies the journaled requests after {@code afterSequence} on the calling
+     * thread with publishing muted, together with the earlier requests of securities
+     * in {@code heldBack} from their held-back sequence on. Credit reservations come
+     * out as the credit decisions journaled since cut {@code cutNumber} say. Cascades
+     * still pending at the end are run out, and the decisions taken for them and for
+     * requests whose decisions never reached the journal are journaled. Must run
+     * before any request is submitted.
+     */
+    public void replay(CommandJournal journal, long afterSequence, Map<String, Long> heldBack,
+                       long cutNumber) throws IOException {
+        eventPublisher.setMuted(true);
+        orderHandler.setActivationScheduler(null, 0);
+        synchronized (intakeLock) {
+            cutCount = cutNumber;
+        }
+        Arrays.fill(shardCuts, cutNumber);
+        try {
+            for (Security security : orderHandler.allSecurities())
+                security.getCreditDecisions().startRecording();
+            long replayFrom = new Cut(afterSequence, cutNumber, heldBack).replayFrom();
+            journal.replay(replayFrom - 1, (record, sequence) -> {
+                if (record instanceof CreditDecisions decisions && decisions.getCut() >= cutNumber) {
+                    Security security = orderHandler.findSecurity(decisions.getSecurityIsin());
+                    if (security != null)
+                        security.getCreditDecisions().replay(decisions.getOutcomes());
+                }
+            });
+            journal.replay(replayFrom - 1, (request, sequence) -> {
+                if (sequence > afterSequence)
+                    apply(request, isin -> true);
+                else
+                    apply(request, isin -> heldBack.getOrDefault(isin, Long.MAX_VALUE) <= sequence);
+            });
+            for (Security security : orderHandler.allSecurities()) {
+                orderHandler.continueActivation(security);
+                security.getCreditDecisions().dropReplayed();
+                boolean[] outcomes = security.getCreditDecisions().drain();
+                if (outcomes.length > 0)
+                    journal.append(new CreditDecisions(cutNumber, security.getIsin(), outcomes));
+            }
+        } finally {
+            orderHandler.setActivationScheduler(this::scheduleActivation, activationQuantum);
+            eventPublisher.setMuted(false);
+        }
+    }
+
+    private void apply(Object request, Predicate<String> includes) {
+        try {
+            if (request instanceof EnterOrderRq enterOrderRq) {
+                if (includes.test(enterOrderRq.getSecurityIsin()))
+                    orderHandler.handleEnterOrder(enterOrderRq);
+            } else if (request instanceof DeleteOrderRq deleteOrderRq) {
+                if (includes.test(deleteOrderRq.getSecurityIsin()))
+                    orderHandler.handleDeleteOrder(deleteOrderRq);
+            } else if (request instanceof ChangeMatchingStateRq changeMatchingStateRq) {
+                if (includes.test(changeMatchingStateRq.getSecurityIsin()))
+                    orderHandler.handleChangeMatchingStateRq(changeMatchingStateRq);
+            } else if (request instanceof BatchEnterOrderRq batchEnterOrderRq) {
+                entriesByIsin(batchEnterOrderRq).forEach((isin, entries) -> {
+                    if (includes.test(isin))
+                        orderHandler.handleBatch(entries, orderHandler.findSecurity(isin));
+                });
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, "Replay of " + request + " failed", e);
+        }
+    }
+
+    public long cutCount() {
+        synchronized (intakeLock) {
+            return cutCount;
+        }
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    public int shardIndexOf(String isin) {
+        return isin == null ? 0 : Math.floorMod(isin.hashCode(), shards.length);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (StageThread<Runnable> shard : shards)
+            shard.halt();
+    }
+
+    private void run(int shard, Runnable request) {
+        eventPublisher.beginRequest();
+        try {
+            request.run();
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, "Request failed on " + Thread.currentThread().getName(), e);
+        } finally {
+            eventPublisher.endRequest();
+        }
+        retryOverflow(shard);
+    }
+}
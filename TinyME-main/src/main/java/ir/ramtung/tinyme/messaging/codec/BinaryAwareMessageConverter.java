@@ -0,0 +1,83 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads binary-encoded {@link BytesMessage}s with {@link BinaryCodec} and hands
+ * every other message to the JSON converter, so clients on either format can
+ * share a queue. Outgoing messages use the configured format. Binary messages
+ * carry the same type id property as JSON ones, so listener selectors keep working.
+ */
+public class BinaryAwareMessageConverter implements MessageConverter {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private final MessageConverter jsonConverter;
+    private final BinaryCodec codec;
+    private final MessageFormat outboundFormat;
+    private final String typeIdPropertyName;
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+
+    public BinaryAwareMessageConverter(MessageConverter jsonConverter, BinaryCodec codec,
+                                       MessageFormat outboundFormat, String typeIdPropertyName) {
+        this.jsonConverter = jsonConverter;
+        this.codec = codec;
+        this.outboundFormat = outboundFormat;
+        this.typeIdPropertyName = typeIdPropertyName;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        return toMessage(object, session, outboundFormat);
+    }
+
+    public Message toMessage(Object object, Session session, MessageFormat format) throws JMSException {
+        if (format != MessageFormat.BINARY || !codec.supports(object.getClass()))
+            return jsonConverter.toMessage(object, session);
+        ByteBuffer buffer = encode(object);
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(buffer.array(), 0, buffer.position());
+        message.setStringProperty(typeIdPropertyName, object.getClass().getName());
+        return message;
+    }
+
+    private ByteBuffer encode(Object object) {
+        ByteBuffer buffer = buffers.get();
+        while (true) {
+            buffer.clear();
+            try {
+                codec.encode(object, buffer);
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffers.set(buffer);
+            }
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (!(message instanceof BytesMessage bytesMessage))
+            return jsonConverter.fromMessage(message);
+        int length = (int) bytesMessage.getBodyLength();
+        ByteBuffer buffer = buffers.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+            buffers.set(buffer);
+        }
+        bytesMessage.readBytes(buffer.array(), length);
+        buffer.clear().limit(length);
+        try {
+            return codec.decode(buffer);
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Could not decode binary message", e);
+        }
+    }
+}
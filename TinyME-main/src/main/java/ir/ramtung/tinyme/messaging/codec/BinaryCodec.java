@@ -0,0 +1,394 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.CreditDecisions;
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.BatchEnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.BatchOrderEntry;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.messaging.request.OrderEntryType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-layout little-endian encoding of requests and events. Every message
+ * starts with a two-byte template id followed by its fixed-size fields in
+ * declaration order; strings and lists come last, prefixed with their
+ * four-byte length.
+ */
+public class BinaryCodec {
+    static final short ENTER_ORDER_RQ = 1;
+    static final short DELETE_ORDER_RQ = 2;
+    static final short CHANGE_MATCHING_STATE_RQ = 3;
+    static final short BATCH_ENTER_ORDER_RQ = 4;
+    static final short CREDIT_DECISIONS = 5;
+    static final short ORDER_ACCEPTED = 10;
+    static final short ORDER_UPDATED = 11;
+    static final short ORDER_DELETED = 12;
+    static final short ORDER_ACTIVATED = 13;
+    static final short ORDER_REJECTED = 14;
+    static final short ORDER_EXECUTED = 15;
+    static final short TRADE = 16;
+    static final short OPENING_PRICE = 17;
+    static final short SECURITY_STATE_CHANGED = 18;
+    static final short CHANGE_MATCHING_STATE_RQ_REJECTED = 19;
+    static final short BATCH_PROCESSED = 20;
+
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final byte NULL_ENUM = -1;
+    private static final OrderEntryType[] ORDER_ENTRY_TYPES = OrderEntryType.values();
+    private static final Side[] SIDES = Side.values();
+    private static final MatchingState[] MATCHING_STATES = MatchingState.values();
+
+    public boolean supports(Class<?> type) {
+        return type == EnterOrderRq.class || type == DeleteOrderRq.class || type == ChangeMatchingStateRq.class
+                || type == BatchEnterOrderRq.class || type == CreditDecisions.class || Event.class.isAssignableFrom(type);
+    }
+
+    public void encode(Object message, ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (message instanceof EnterOrderRq rq) {
+            buffer.putShort(ENTER_ORDER_RQ);
+            buffer.put(ordinal(rq.getRequestType()));
+            buffer.putLong(rq.getRequestId());
+            buffer.putLong(rq.getOrderId());
+            putTime(buffer, rq.getEntryTime());
+            buffer.put(ordinal(rq.getSide()));
+            buffer.putInt(rq.getQuantity());
+            buffer.putInt(rq.getPrice());
+            buffer.putLong(rq.getBrokerId());
+            buffer.putLong(rq.getShareholderId());
+            buffer.putInt(rq.getPeakSize());
+            buffer.putInt(rq.getMinimumExecutionQuantity());
+            buffer.putInt(rq.getStopPrice());
+            putString(buffer, rq.getSecurityIsin());
+        } else if (message instanceof DeleteOrderRq rq) {
+            buffer.putShort(DELETE_ORDER_RQ);
+            buffer.putLong(rq.getRequestId());
+            buffer.put(ordinal(rq.getSide()));
+            buffer.putLong(rq.getOrderId());
+            putTime(buffer, rq.getEntryTime());
+            putString(buffer, rq.getSecurityIsin());
+        } else if (message instanceof ChangeMatchingStateRq rq) {
+            buffer.putShort(CHANGE_MATCHING_STATE_RQ);
+            buffer.put(ordinal(rq.getTargetState()));
+            putString(buffer, rq.getSecurityIsin());
+        } else if (message instanceof BatchEnterOrderRq rq) {
+            buffer.putShort(BATCH_ENTER_ORDER_RQ);
+            buffer.putLong(rq.getRequestId());
+            buffer.putInt(rq.getEntries().size());
+            for (BatchOrderEntry entry : rq.getEntries())
+                encode(entry.getEnterOrderRq() != null ? entry.getEnterOrderRq() : entry.getDeleteOrderRq(), buffer);
+        } else if (message instanceof CreditDecisions decisions) {
+            buffer.putShort(CREDIT_DECISIONS);
+            buffer.putLong(decisions.getCut());
+            putString(buffer, decisions.getSecurityIsin());
+            boolean[] outcomes = decisions.getOutcomes();
+            buffer.putInt(outcomes.length);
+            for (int i = 0; i < outcomes.length; i += Byte.SIZE) {
+                int bits = 0;
+                for (int bit = 0; bit < Byte.SIZE && i + bit < outcomes.length; bit++)
+                    if (outcomes[i + bit])
+                        bits |= 1 << bit;
+                buffer.put((byte) bits);
+            }
+        } else if (message instanceof Event event) {
+            encodeEvent(event, buffer);
+        } else {
+            throw new IllegalArgumentException("No binary layout for " + message.getClass().getName());
+        }
+    }
+
+    private void encodeEvent(Event event, ByteBuffer buffer) {
+        if (event instanceof OrderAcceptedEvent e) {
+            putOrderEvent(buffer, ORDER_ACCEPTED, e.getRequestId(), e.getOrderId(), e.getTime());
+        } else if (event instanceof OrderUpdatedEvent e) {
+            putOrderEvent(buffer, ORDER_UPDATED, e.getRequestId(), e.getOrderId(), e.getTime());
+        } else if (event instanceof OrderDeletedEvent e) {
+            putOrderEvent(buffer, ORDER_DELETED, e.getRequestId(), e.getOrderId(), e.getTime());
+        } else if (event instanceof OrderActivateEvent e) {
+            putOrderEvent(buffer, ORDER_ACTIVATED, e.getRequestId(), e.getOrderId(), e.getTime());
+        } else if (event instanceof OrderRejectedEvent e) {
+            putOrderEvent(buffer, ORDER_REJECTED, e.getRequestId(), e.getOrderId(), e.getTime());
+            List<String> errors = e.getErrors() == null ? List.of() : e.getErrors();
+            buffer.putInt(errors.size());
+            for (String error : errors)
+                putString(buffer, error);
+        } else if (event instanceof OrderExecutedEvent e) {
+            putOrderEvent(buffer, ORDER_EXECUTED, e.getRequestId(), e.getOrderId(), e.getTime());
+            List<TradeDTO> trades = e.getTrades() == null ? List.of() : e.getTrades();
+            buffer.putInt(trades.size());
+            for (TradeDTO trade : trades) {
+                buffer.putInt(trade.price());
+                buffer.putInt(trade.quantity());
+                buffer.putLong(trade.buyOrderId());
+                buffer.putLong(trade.sellOrderId());
+                putString(buffer, trade.securityIsin());
+            }
+        } else if (event instanceof TradeEvent e) {
+            buffer.putShort(TRADE);
+            putTime(buffer, e.getTime());
+            buffer.putInt(e.getPrice());
+            buffer.putInt(e.getQuantity());
+            buffer.putLong(e.getBuyId());
+            buffer.putLong(e.getSellId());
+            putString(buffer, e.getSecurityIsin());
+        } else if (event instanceof OpeningPriceEvent e) {
+            buffer.putShort(OPENING_PRICE);
+            putTime(buffer, e.getTime());
+            buffer.putInt(e.getOpeningPrice());
+            buffer.putInt(e.getTradableQuantity());
+            putString(buffer, e.getSecurityIsin());
+        } else if (event instanceof SecurityStateChangedEvent e) {
+            buffer.putShort(SECURITY_STATE_CHANGED);
+            putTime(buffer, e.getTime());
+            buffer.put(ordinal(e.getState()));
+            putString(buffer, e.getSecurityIsin());
+        } else if (event instanceof ChangeMatchingStateRqRejectedEvent e) {
+            buffer.putShort(CHANGE_MATCHING_STATE_RQ_REJECTED);
+            putTime(buffer, e.getTime());
+            buffer.put(ordinal(e.getTargetState()));
+            putString(buffer, e.getSecurityIsin());
+        } else if (event instanceof BatchProcessedEvent e) {
+            buffer.putShort(BATCH_PROCESSED);
+            putTime(buffer, e.getTime());
+            buffer.putLong(e.getRequestId());
+            putString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getEvents().size());
+            for (Event nested : e.getEvents())
+                encodeEvent(nested, buffer);
+        } else {
+            throw new IllegalArgumentException("No binary layout for " + event.getClass().getName());
+        }
+    }
+
+    private void putOrderEvent(ByteBuffer buffer, short templateId, long requestId, long orderId, LocalDateTime time) {
+        buffer.putShort(templateId);
+        buffer.putLong(requestId);
+        buffer.putLong(orderId);
+        putTime(buffer, time);
+    }
+
+    public Object decode(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        short templateId = buffer.getShort();
+        switch (templateId) {
+            case ENTER_ORDER_RQ: {
+                EnterOrderRq rq = new EnterOrderRq();
+                rq.setRequestType(enumAt(ORDER_ENTRY_TYPES, buffer.get()));
+                rq.setRequestId(buffer.getLong());
+                rq.setOrderId(buffer.getLong());
+                rq.setEntryTime(getTime(buffer));
+                rq.setSide(enumAt(SIDES, buffer.get()));
+                rq.setQuantity(buffer.getInt());
+                rq.setPrice(buffer.getInt());
+                rq.setBrokerId(buffer.getLong());
+                rq.setShareholderId(buffer.getLong());
+                rq.setPeakSize(buffer.getInt());
+                rq.setMinimumExecutionQuantity(buffer.getInt());
+                rq.setStopPrice(buffer.getInt());
+                rq.setSecurityIsin(getString(buffer));
+                return rq;
+            }
+            case DELETE_ORDER_RQ: {
+                DeleteOrderRq rq = new DeleteOrderRq();
+                rq.setRequestId(buffer.getLong());
+                rq.setSide(enumAt(SIDES, buffer.get()));
+                rq.setOrderId(buffer.getLong());
+                rq.setEntryTime(getTime(buffer));
+                rq.setSecurityIsin(getString(buffer));
+                return rq;
+            }
+            case CHANGE_MATCHING_STATE_RQ: {
+                ChangeMatchingStateRq rq = new ChangeMatchingStateRq();
+                rq.setTargetState(enumAt(MATCHING_STATES, buffer.get()));
+                rq.setSecurityIsin(getString(buffer));
+                return rq;
+            }
+            case BATCH_ENTER_ORDER_RQ: {
+                long requestId = buffer.getLong();
+                int count = buffer.getInt();
+                List<BatchOrderEntry> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Object entry = decode(buffer);
+                    if (entry instanceof EnterOrderRq enterOrderRq)
+                        entries.add(BatchOrderEntry.enter(enterOrderRq));
+                    else if (entry instanceof DeleteOrderRq deleteOrderRq)
+                        entries.add(BatchOrderEntry.delete(deleteOrderRq));
+                    else
+                        throw new IllegalArgumentException("Unexpected batch entry " + entry.getClass().getName());
+                }
+                return new BatchEnterOrderRq(requestId, entries);
+            }
+            case CREDIT_DECISIONS: {
+                long cut = buffer.getLong();
+                String securityIsin = getString(buffer);
+                boolean[] outcomes = new boolean[buffer.getInt()];
+                for (int i = 0; i < outcomes.length; i += Byte.SIZE) {
+                    byte bits = buffer.get();
+                    for (int bit = 0; bit < Byte.SIZE && i + bit < outcomes.length; bit++)
+                        outcomes[i + bit] = (bits & (1 << bit)) != 0;
+                }
+                return new CreditDecisions(cut, securityIsin, outcomes);
+            }
+            default:
+                return decodeEvent(templateId, buffer);
+        }
+    }
+
+    private Event decodeEvent(short templateId, ByteBuffer buffer) {
+        Event event;
+        LocalDateTime time;
+        switch (templateId) {
+            case ORDER_ACCEPTED:
+                event = new OrderAcceptedEvent(buffer.getLong(), buffer.getLong());
+                break;
+            case ORDER_UPDATED:
+                event = new OrderUpdatedEvent(buffer.getLong(), buffer.getLong());
+                break;
+            case ORDER_DELETED:
+                event = new OrderDeletedEvent(buffer.getLong(), buffer.getLong());
+                break;
+            case ORDER_ACTIVATED:
+                event = new OrderActivateEvent(buffer.getLong(), buffer.getLong());
+                break;
+            case ORDER_REJECTED: {
+                long requestId = buffer.getLong();
+                long orderId = buffer.getLong();
+                time = getTime(buffer);
+                int count = buffer.getInt();
+                List<String> errors = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    errors.add(getString(buffer));
+                event = new OrderRejectedEvent(requestId, orderId, errors);
+                event.setTime(time);
+                return event;
+            }
+            case ORDER_EXECUTED: {
+                long requestId = buffer.getLong();
+                long orderId = buffer.getLong();
+                time = getTime(buffer);
+                int count = buffer.getInt();
+                List<TradeDTO> trades = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int price = buffer.getInt();
+                    int quantity = buffer.getInt();
+                    long buyOrderId = buffer.getLong();
+                    long sellOrderId = buffer.getLong();
+                    trades.add(new TradeDTO(getString(buffer), price, quantity, buyOrderId, sellOrderId));
+                }
+                event = new OrderExecutedEvent(requestId, orderId, trades);
+                event.setTime(time);
+                return event;
+            }
+            case TRADE: {
+                time = getTime(buffer);
+                int price = buffer.getInt();
+                int quantity = buffer.getInt();
+                long buyId = buffer.getLong();
+                long sellId = buffer.getLong();
+                event = new TradeEvent(getString(buffer), price, quantity, buyId, sellId);
+                event.setTime(time);
+                return event;
+            }
+            case OPENING_PRICE: {
+                time = getTime(buffer);
+                int openingPrice = buffer.getInt();
+                int tradableQuantity = buffer.getInt();
+                event = new OpeningPriceEvent(getString(buffer), openingPrice, tradableQuantity);
+                event.setTime(time);
+                return event;
+            }
+            case SECURITY_STATE_CHANGED: {
+                time = getTime(buffer);
+                MatchingState state = enumAt(MATCHING_STATES, buffer.get());
+                event = new SecurityStateChangedEvent(getString(buffer), state);
+                event.setTime(time);
+                return event;
+            }
+            case CHANGE_MATCHING_STATE_RQ_REJECTED: {
+                time = getTime(buffer);
+                MatchingState state = enumAt(MATCHING_STATES, buffer.get());
+                event = new ChangeMatchingStateRqRejectedEvent(getString(buffer), state);
+                event.setTime(time);
+                return event;
+            }
+            case BATCH_PROCESSED: {
+                time = getTime(buffer);
+                long requestId = buffer.getLong();
+                String securityIsin = getString(buffer);
+                int count = buffer.getInt();
+                List<Event> events = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    events.add(decodeEvent(buffer.getShort(), buffer));
+                event = new BatchProcessedEvent(requestId, securityIsin, events);
+                event.setTime(time);
+                return event;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown binary template id " + templateId);
+        }
+        event.setTime(getTime(buffer));
+        return event;
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? NULL_ENUM : (byte) value.ordinal();
+    }
+
+    private static <E> E enumAt(E[] values, byte ordinal) {
+        return ordinal == NULL_ENUM ? null : values[ordinal];
+    }
+
+    private static void putTime(ByteBuffer buffer, LocalDateTime time) {
+        if (time == null) {
+            buffer.putLong(NULL_TIME);
+            buffer.putInt(0);
+        } else {
+            buffer.putLong(time.toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime getTime(ByteBuffer buffer) {
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        return seconds == NULL_TIME ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
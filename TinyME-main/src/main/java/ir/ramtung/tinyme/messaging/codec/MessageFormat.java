@@ -0,0 +1,6 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+public enum MessageFormat {
+    JSON,
+    BINARY
+}
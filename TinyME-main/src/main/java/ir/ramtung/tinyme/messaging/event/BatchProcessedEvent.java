@@ -0,0 +1,20 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchProcessedEvent extends Event {
+    private long requestId;
+    private String securityIsin;
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, property = "_type")
+    private List<Event> events;
+}
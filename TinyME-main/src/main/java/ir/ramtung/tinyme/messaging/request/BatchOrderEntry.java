@@ -0,0 +1,27 @@
+package ir.ramtung.tinyme.messaging.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchOrderEntry {
+    private EnterOrderRq enterOrderRq;
+    private DeleteOrderRq deleteOrderRq;
+
+    public static BatchOrderEntry enter(EnterOrderRq enterOrderRq) {
+        return new BatchOrderEntry(enterOrderRq, null);
+    }
+
+    public static BatchOrderEntry delete(DeleteOrderRq deleteOrderRq) {
+        return new BatchOrderEntry(null, deleteOrderRq);
+    }
+
+    public String securityIsin() {
+        if (enterOrderRq != null)
+            return enterOrderRq.getSecurityIsin();
+        return deleteOrderRq == null ? null : deleteOrderRq.getSecurityIsin();
+    }
+}
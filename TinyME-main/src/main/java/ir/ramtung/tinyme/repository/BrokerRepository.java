@@ -1,13 +1,12 @@
 package ir.ramtung.tinyme.repository;
 
 import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.util.LongObjectHashMap;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-
 @Component
 public class BrokerRepository {
-    private final HashMap<Long, Broker> brokerById = new HashMap<>();
+    private final LongObjectHashMap<Broker> brokerById = new LongObjectHashMap<>();
     public Broker findBrokerById(long brokerId) {
         return brokerById.get(brokerId);
     }
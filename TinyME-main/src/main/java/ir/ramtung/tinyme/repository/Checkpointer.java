@@ -0,0 +1,126 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.messaging.RequestSequencer;
+import ir.ramtung.tinyme.util.LongLongHashMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes periodic state snapshots while the engine keeps matching. Each checkpoint
+ * is a {@link RequestSequencer#cut}: every shard copies only its own securities that
+ * it changed since the previous checkpoint, and its own share of broker credit
+ * changes, then carries on matching. The copies are encoded, broker credits are put
+ * together and the file is written on the checkpoint thread. The journal is then trimmed up to the sequence
+ * of the cut, keeping the requests a cascade still held back at the cut.
+ */
+@Component
+@Profile("!test")
+@DependsOn("dataLoader")
+public class Checkpointer {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final SecurityRepository securityRepository;
+    private final StateSnapshot stateSnapshot;
+    private final CommandJournal journal;
+    private final RequestSequencer requestSequencer;
+    private final Path snapshotFile;
+    private final long intervalSeconds;
+    private final Map<String, byte[]> securityBlocks = new HashMap<>();
+    private final Map<String, StateSnapshot.SecurityCopy> securityCopies = new ConcurrentHashMap<>();
+    private final Map<Integer, List<String>> uncapturedIsins = new ConcurrentHashMap<>();
+    private final Map<Integer, LongLongHashMap> creditChanges = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    public Checkpointer(SecurityRepository securityRepository, StateSnapshot stateSnapshot,
+                        CommandJournal journal, RequestSequencer requestSequencer,
+                        @Value("${snapshotFile:snapshot/state.bin}") String snapshotFile,
+                        @Value("${checkpointIntervalSeconds:60}") long intervalSeconds) {
+        this.securityRepository = securityRepository;
+        this.stateSnapshot = stateSnapshot;
+        this.journal = journal;
+        this.requestSequencer = requestSequencer;
+        this.snapshotFile = Path.of(snapshotFile);
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Security security : securityRepository.allSecurities())
+            uncapturedIsins.computeIfAbsent(requestSequencer.shardIndexOf(security.getIsin()), shard -> new ArrayList<>())
+                    .add(security.getIsin());
+        if (intervalSeconds <= 0)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkpointQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Checkpoint failed", e);
+        }
+    }
+
+    public void checkpoint() throws Exception {
+        RequestSequencer.Cut cut = requestSequencer.cut(this::captureShard);
+        securityCopies.forEach((isin, copy) -> securityBlocks.put(isin, stateSnapshot.encode(copy)));
+        securityCopies.clear();
+        List<Broker> brokers = stateSnapshot.brokersAtCut(creditChanges.values());
+        Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+        stateSnapshot.save(snapshotFile, cut.sequence(), cut.number(), cut.heldBack(), brokers, securityBlocks.values());
+        journal.discardUpTo(cut.replayFrom() - 1);
+        log.info("Checkpoint written at journal sequence " + cut.sequence());
+    }
+
+    private void captureShard(int shard, Set<String> changedIsins) {
+        creditChanges.put(shard, stateSnapshot.captureCreditChanges(shard));
+        for (String isin : changedIsins)
+            copySecurity(isin);
+        List<String> uncaptured = uncapturedIsins.get(shard);
+        if (uncaptured == null)
+            return;
+        for (String isin : uncaptured) {
+            if (!changedIsins.contains(isin))
+                copySecurity(isin);
+        }
+        uncapturedIsins.remove(shard);
+    }
+
+    private void copySecurity(String isin) {
+        Security security = securityRepository.findSecurityByIsin(isin);
+        if (security != null)
+            securityCopies.put(isin, stateSnapshot.copy(security));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (executor == null)
+            return;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
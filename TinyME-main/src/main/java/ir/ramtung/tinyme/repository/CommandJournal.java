@@ -0,0 +1,192 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of inbound requests, stored in memory-mapped segment files.
+ * A record is {@code [int length][long sequence][payload]} where the payload is the
+ * {@link BinaryCodec} encoding of the request; a zero length marks the end of the
+ * written part of a segment. The length is written last, so a partially written
+ * record is never seen by replay. Segments wholly covered by a snapshot are removed
+ * with {@link #discardUpTo}.
+ */
+@Component
+@Profile("!test")
+public class CommandJournal {
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final BinaryCodec codec = new BinaryCodec();
+    private final Path directory;
+    private final int segmentSize;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+
+    public CommandJournal(@Value("${journalDirectory:journal}") String directory,
+                          @Value("${journalSegmentSize:67108864}") int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE)
+            throw new IllegalArgumentException("Journal segment size is too small");
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSize;
+        Files.createDirectories(this.directory);
+        recover();
+    }
+
+    public synchronized long append(Object request) {
+        int position = segment.position();
+        int length;
+        try {
+            length = encodeAt(request, position);
+        } catch (BufferOverflowException e) {
+            roll();
+            position = segment.position();
+            try {
+                length = encodeAt(request, position);
+            } catch (BufferOverflowException tooLarge) {
+                throw new IllegalArgumentException("Request does not fit in a journal segment", tooLarge);
+            }
+        }
+        long sequence = nextSequence++;
+        segment.putLong(position + Integer.BYTES, sequence);
+        segment.putInt(position, length);
+        segment.position(position + HEADER_SIZE + length);
+        return sequence;
+    }
+
+    private int encodeAt(Object request, int position) {
+        if (segmentSize - position < HEADER_SIZE + Integer.BYTES)
+            throw new BufferOverflowException();
+        ByteBuffer body = segment.duplicate();
+        body.position(position + HEADER_SIZE);
+        body.limit(segmentSize - Integer.BYTES);
+        codec.encode(request, body);
+        return body.position() - position - HEADER_SIZE;
+    }
+
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    public void replay(long afterSequence, ObjLongConsumer<Object> handler) throws IOException {
+        long replayed = 0;
+        for (Path file : segmentFiles()) {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    int length = buffer.getInt();
+                    if (length <= 0)
+                        break;
+                    long sequence = buffer.getLong();
+                    ByteBuffer body = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    if (sequence > afterSequence) {
+                        handler.accept(codec.decode(body), sequence);
+                        replayed++;
+                    }
+                }
+            }
+        }
+        log.info("Replayed " + replayed + " journaled requests after sequence " + afterSequence);
+    }
+
+    public synchronized void continueAfter(long sequence) {
+        if (nextSequence > sequence)
+            return;
+        nextSequence = sequence + 1;
+        roll();
+    }
+
+    public synchronized void discardUpTo(long sequence) throws IOException {
+        List<Path> files = segmentFiles();
+        for (int i = 0; i + 1 < files.size(); i++) {
+            if (firstSequenceOf(files.get(i + 1)) <= sequence + 1)
+                Files.delete(files.get(i));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel == null)
+            return;
+        segment.force();
+        channel.close();
+        channel = null;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = segmentFiles();
+        if (files.isEmpty()) {
+            nextSequence = 1;
+            openSegment(nextSequence);
+            return;
+        }
+        Path last = files.get(files.size() - 1);
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        long lastSequence = firstSequenceOf(last) - 1;
+        while (segment.remaining() >= HEADER_SIZE) {
+            int length = segment.getInt(segment.position());
+            if (length <= 0)
+                break;
+            lastSequence = segment.getLong(segment.position() + Integer.BYTES);
+            segment.position(segment.position() + HEADER_SIZE + length);
+        }
+        nextSequence = lastSequence + 1;
+    }
+
+    private void roll() {
+        try {
+            segment.force();
+            channel.close();
+            openSegment(nextSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long firstSequenceOf(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
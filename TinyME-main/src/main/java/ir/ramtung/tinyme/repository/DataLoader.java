@@ -3,6 +3,7 @@ package ir.ramtung.tinyme.repository;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.RequestSequencer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,13 +12,13 @@ import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.StringJoiner;
+import java.util.Map;
 import java.util.logging.Logger;
 
 @Component
@@ -27,11 +28,21 @@ public class DataLoader {
     private final BrokerRepository brokerRepository;
     private final ShareholderRepository shareholderRepository;
     private final SecurityRepository securityRepository;
-
-    public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
+    private final CommandJournal journal;
+    private final RequestSequencer requestSequencer;
+    private final StateSnapshot stateSnapshot;
+    private final Path snapshotFile;
+
+    public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository,
+                      CommandJournal journal, RequestSequencer requestSequencer, StateSnapshot stateSnapshot,
+                      @Value("${snapshotFile:snapshot/state.bin}") String snapshotFile) {
         this.brokerRepository = brokerRepository;
         this.shareholderRepository = shareholderRepository;
         this.securityRepository = securityRepository;
+        this.journal = journal;
+        this.requestSequencer = requestSequencer;
+        this.stateSnapshot = stateSnapshot;
+        this.snapshotFile = Path.of(snapshotFile);
     }
 
     @Value("classpath:persistence/broker.csv")
@@ -47,19 +58,34 @@ public class DataLoader {
 
     @PostConstruct
     public void loadAll() throws Exception {
-        loadBrokers();
-        loadShareholders();
-        loadSecurities();
-        loadPositions();
-        loadOrderBook();
+        long snapshotSequence = 0;
+        long cutNumber = 0;
+        Map<String, Long> heldBack = Map.of();
+        if (Files.exists(snapshotFile)) {
+            StateSnapshot.Loaded loaded = stateSnapshot.load(snapshotFile);
+            snapshotSequence = loaded.journalSequence();
+            cutNumber = loaded.cutNumber();
+            heldBack = loaded.heldBack();
+            journal.continueAfter(snapshotSequence);
+            log.info("State snapshot loaded up to journal sequence " + snapshotSequence);
+        } else {
+            loadBrokers();
+            loadShareholders();
+            loadSecurities();
+            loadPositions();
+            loadOrderBook();
+        }
+        requestSequencer.replay(journal, snapshotSequence, heldBack, cutNumber);
     }
 
     @PreDestroy
     public void saveAll() throws Exception {
         System.out.print("Saving persistent data ...");
-        saveBrokers();
-        saveShareholdersAndPositions();
-        saveSecuritiesAndOrderBooks();
+        requestSequencer.shutdown();
+        long journalSequence = journal.lastSequence();
+        Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+        stateSnapshot.save(snapshotFile, journalSequence, requestSequencer.cutCount());
+        journal.discardUpTo(journalSequence);
         System.out.println(", done!");
     }
 
@@ -179,82 +205,4 @@ public class DataLoader {
         log.info("Order Book loaded");
     }
 
-    private void saveBrokers() throws Exception {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(brokerCsvResource.getFile()))) {
-            writer.println("brokerId,name,credit");
-            for (Broker broker : brokerRepository.allBrokers()) {
-                StringJoiner joiner = new StringJoiner(",");
-                joiner.add(String.valueOf(broker.getBrokerId()))
-                        .add(broker.getName())
-                        .add(String.valueOf(broker.getCredit()));
-                writer.println(joiner);
-            }
-        }
-        log.info("Brokers saved");
-    }
-
-    private void saveShareholdersAndPositions() throws Exception {
-        try (PrintWriter shareholderWriter = new PrintWriter(new FileWriter(shareholderCsvResource.getFile()))) {
-            shareholderWriter.println("shareholderId,name");
-            try (PrintWriter positionWriter = new PrintWriter(new FileWriter(positionCsvResource.getFile()))) {
-                positionWriter.println("shareholderId,isin,positions");
-                for (Shareholder shareholder : shareholderRepository.allShareholders()) {
-                    StringJoiner joiner = new StringJoiner(",");
-                    joiner.add(String.valueOf(shareholder.getShareholderId()))
-                            .add(shareholder.getName());
-                    shareholderWriter.println(joiner);
-                    for (var entry : shareholder.getPositions().entrySet()) {
-                        StringJoiner posJoiner = new StringJoiner(",");
-                        posJoiner.add(String.valueOf(shareholder.getShareholderId()))
-                                .add(entry.getKey().getIsin())
-                                .add(String.valueOf(entry.getValue()));
-                        positionWriter.println(posJoiner);
-                    }
-                }
-            }
-        }
-        log.info("Shareholders and Positions saved");
-    }
-
-    private void saveSecuritiesAndOrderBooks() throws Exception {
-        try (PrintWriter securityWriter = new PrintWriter(new FileWriter(securityCsvResource.getFile()))) {
-            securityWriter.println("isin,tickSize,lotSize");
-            try (PrintWriter orderBookWriter = new PrintWriter(new FileWriter(orderBookCsvResource.getFile()))) {
-                orderBookWriter.println("orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity,minimumExecutionQuantity");
-                for (Security security : securityRepository.allSecurities()) {
-                    StringJoiner joiner = new StringJoiner(",");
-                    joiner.add(security.getIsin())
-                            .add(String.valueOf(security.getTickSize()))
-                            .add(String.valueOf(security.getLotSize()));
-                    securityWriter.println(joiner);
-                    for (Order order : security.getOrderBook().getBuyQueue())
-                        orderBookWriter.println(getCSVString(order));
-                    for (Order order : security.getOrderBook().getSellQueue())
-                        orderBookWriter.println(getCSVString(order));
-                }
-            }
-        }
-        log.info("Securities and OrderBook saved");
-    }
-
-    private static String getCSVString(Order order) {
-        StringJoiner orderJoiner = new StringJoiner(",");
-        orderJoiner.add(String.valueOf(order.getOrderId()))
-                .add(order.getSecurity().getIsin())
-                .add(order.getSide().toString())
-                .add(String.valueOf(order.getQuantity()))
-                .add(String.valueOf(order.getPrice()))
-                .add(String.valueOf(order.getBroker().getBrokerId()))
-                .add(String.valueOf(order.getShareholder().getShareholderId()))
-                .add(order.getEntryTime().toString());
-        if (order instanceof IcebergOrder icebergOrder) {
-            orderJoiner.add(String.valueOf(icebergOrder.getPeakSize()))
-                    .add(String.valueOf(icebergOrder.getDisplayedQuantity()));
-        } else {
-            orderJoiner.add("0").add("0");
-        }
-        orderJoiner.add(String.valueOf(order.getMinimumExecutionQuantity()));
-        return orderJoiner.toString();
-    }
-
 }
@@ -3,24 +3,37 @@ package ir.ramtung.tinyme.repository;
 import ir.ramtung.tinyme.domain.entity.Security;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 @Component
 public class SecurityRepository {
     private final HashMap<String, Security> securityByIsin = new HashMap<>();
+    private final List<Security> securities = new ArrayList<>();
+
     public Security findSecurityByIsin(String isin) {
         return securityByIsin.get(isin);
     }
 
     public void addSecurity(Security security) {
-        securityByIsin.put(security.getIsin(), security);
+        Security replaced = securityByIsin.put(security.getIsin(), security);
+        if (replaced == null) {
+            security.setIndex(securities.size());
+            securities.add(security);
+        } else {
+            security.setIndex(replaced.getIndex());
+            security.getHolders().addAll(replaced.getHolders());
+            securities.set(replaced.getIndex(), security);
+        }
     }
 
     public void clear() {
         securityByIsin.clear();
+        securities.clear();
     }
 
-    Iterable<? extends Security> allSecurities() {
-        return securityByIsin.values();
+    public Iterable<? extends Security> allSecurities() {
+        return securities;
     }
 }
@@ -0,0 +1,443 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.util.LongLongHashMap;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact little-endian image of all brokers, shareholders, securities and books.
+ * Every security, with its books and the positions held on it, is encoded into a
+ * self-contained block. The thread that owns a security only takes a flat
+ * {@link #copy} of its fields; the copy is turned into a block by {@link #encode}
+ * on whichever thread writes the snapshot. Broker credits as
+ * of a cut are rebuilt from what each shard had changed when it reached the cut,
+ * so no shard has to wait for the others. Resting orders
+ * are encoded in queue order, so loading only appends to the tail of each queue,
+ * and each live order carries the request id that entered it.
+ * The header carries the journal sequence the image covers, the number of the cut
+ * it was taken at and, for securities whose requests were held back behind a
+ * stop-limit cascade at that point, the sequence from which their requests still
+ * have to be replayed.
+ */
+@Component
+public class StateSnapshot {
+    private static final int MAGIC = 0x534D4E54;
+    private static final short VERSION = 6;
+    private static final byte PLAIN_ORDER = 0;
+    private static final byte ICEBERG_ORDER = 1;
+    private static final Side[] SIDES = Side.values();
+    private static final MatchingState[] MATCHING_STATES = MatchingState.values();
+    private static final OrderStatus[] ORDER_STATUSES = OrderStatus.values();
+    private static final int ORDER_FIELDS = 10;
+    private static final int RESTING_ORDER_FIELDS = ORDER_FIELDS + 5;
+    private static final int STOP_LIMIT_ORDER_FIELDS = ORDER_FIELDS + 1;
+
+    public record Loaded(long journalSequence, long cutNumber, Map<String, Long> heldBack) {
+    }
+
+    /**
+     * The fields of a security as of one point, laid out flat: resting orders,
+     * stop-limit orders and positions are packed into primitive arrays, one fixed-size
+     * run of values per entry.
+     */
+    public record SecurityCopy(String isin, int tickSize, int lotSize, MatchingState matchingState,
+                               int lastTradePrice, int reopeningPrice, int maxTradableQuantity,
+                               boolean activationPending, MatchingState activationTargetState,
+                               long[] orders, long[] stopLimitOrders, long[] positions) {
+    }
+
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+
+    public StateSnapshot(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+    }
+
+    public void save(Path file, long journalSequence, long cutNumber) throws IOException {
+        List<byte[]> securityBlocks = new ArrayList<>();
+        for (Security security : securityRepository.allSecurities())
+            securityBlocks.add(capture(security));
+        save(file, journalSequence, cutNumber, Map.of(), captureBrokers(), securityBlocks);
+    }
+
+    public List<Broker> captureBrokers() {
+        List<Broker> brokers = new ArrayList<>();
+        for (Broker broker : brokerRepository.allBrokers())
+            brokers.add(Broker.builder().brokerId(broker.getBrokerId()).name(broker.getName()).credit(broker.getCredit()).build());
+        return brokers;
+    }
+
+    public LongLongHashMap captureCreditChanges(int stripe) {
+        LongLongHashMap changes = new LongLongHashMap();
+        for (Broker broker : brokerRepository.allBrokers())
+            changes.put(broker.getBrokerId(), broker.getCreditChangeOn(stripe));
+        return changes;
+    }
+
+    public List<Broker> brokersAtCut(Collection<LongLongHashMap> creditChanges) {
+        List<Broker> brokers = new ArrayList<>();
+        for (Broker broker : brokerRepository.allBrokers()) {
+            long credit = broker.getInitialCredit() + broker.getCreditChangeOutsideStages();
+            for (LongLongHashMap changes : creditChanges)
+                credit += changes.get(broker.getBrokerId());
+            brokers.add(Broker.builder().brokerId(broker.getBrokerId()).name(broker.getName()).credit(credit).build());
+        }
+        return brokers;
+    }
+
+    public byte[] capture(Security security) {
+        return encode(copy(security));
+    }
+
+    public SecurityCopy copy(Security security) {
+        OrderBook orderBook = security.getOrderBook();
+        List<Order> orders = orderBook.getBuyQueue();
+        orders.addAll(orderBook.getSellQueue());
+        long[] orderFields = new long[orders.size() * RESTING_ORDER_FIELDS];
+        int at = 0;
+        for (Order order : orders) {
+            copyOrderFields(orderFields, at, order);
+            orderFields[at + ORDER_FIELDS] = order.getMinimumExecutionQuantity();
+            orderFields[at + ORDER_FIELDS + 1] = order.getInitialQuantity();
+            if (order instanceof IcebergOrder icebergOrder) {
+                orderFields[at + ORDER_FIELDS + 2] = ICEBERG_ORDER;
+                orderFields[at + ORDER_FIELDS + 3] = icebergOrder.getPeakSize();
+                orderFields[at + ORDER_FIELDS + 4] = icebergOrder.getDisplayedQuantity();
+            }
+            at += RESTING_ORDER_FIELDS;
+        }
+
+        InactiveOrderBook inactiveOrderBook = security.getInactiveOrderBook();
+        List<StopLimitOrder> stopLimitOrders = inactiveOrderBook.getInactiveBuyQueue();
+        stopLimitOrders.addAll(inactiveOrderBook.getInactiveSellQueue());
+        long[] stopLimitOrderFields = new long[stopLimitOrders.size() * STOP_LIMIT_ORDER_FIELDS];
+        at = 0;
+        for (StopLimitOrder order : stopLimitOrders) {
+            copyOrderFields(stopLimitOrderFields, at, order);
+            stopLimitOrderFields[at + ORDER_FIELDS] = order.getStopPrice();
+            at += STOP_LIMIT_ORDER_FIELDS;
+        }
+
+        long[] positions = new long[security.getHolders().size() * 2];
+        at = 0;
+        for (Shareholder shareholder : security.getHolders()) {
+            int position = shareholder.getPosition(security);
+            if (position == 0)
+                continue;
+            positions[at++] = shareholder.getShareholderId();
+            positions[at++] = position;
+        }
+
+        MatchingContext context = security.getMatchingContext();
+        return new SecurityCopy(security.getIsin(), security.getTickSize(), security.getLotSize(),
+                security.getCurrentMatchingState(), context.getLastTradePrice(), context.getReopeningPrice(),
+                context.getMaxTradableQuantity(), security.isActivationPending(), security.getActivationTargetState(),
+                orderFields, stopLimitOrderFields, at == positions.length ? positions : Arrays.copyOf(positions, at));
+    }
+
+    private static void copyOrderFields(long[] fields, int at, Order order) {
+        LocalDateTime entryTime = order.getEntryTime();
+        fields[at] = order.getOrderId();
+        fields[at + 1] = order.getSecurity().getRequestIds().get(order.getOrderId());
+        fields[at + 2] = order.getSide().ordinal();
+        fields[at + 3] = order.getStatus().ordinal();
+        fields[at + 4] = order.getTotalQuantity();
+        fields[at + 5] = order.getPrice();
+        fields[at + 6] = order.getBroker().getBrokerId();
+        fields[at + 7] = order.getShareholder().getShareholderId();
+        fields[at + 8] = entryTime.toEpochSecond(ZoneOffset.UTC);
+        fields[at + 9] = entryTime.getNano();
+    }
+
+    public byte[] encode(SecurityCopy copy) {
+        Output out = new Output(1024);
+        out.putString(copy.isin());
+        MatchingState activationTargetState = copy.activationTargetState();
+        out.ensure(5 * Integer.BYTES + 3);
+        out.buffer.putInt(copy.tickSize()).putInt(copy.lotSize())
+                .put((byte) copy.matchingState().ordinal())
+                .putInt(copy.lastTradePrice())
+                .putInt(copy.reopeningPrice())
+                .putInt(copy.maxTradableQuantity())
+                .put((byte) (copy.activationPending() ? 1 : 0))
+                .put((byte) (activationTargetState == null ? -1 : activationTargetState.ordinal()));
+
+        long[] orders = copy.orders();
+        out.putInt(orders.length / RESTING_ORDER_FIELDS);
+        for (int at = 0; at < orders.length; at += RESTING_ORDER_FIELDS)
+            putOrder(out, orders, at);
+        long[] stopLimitOrders = copy.stopLimitOrders();
+        out.putInt(stopLimitOrders.length / STOP_LIMIT_ORDER_FIELDS);
+        for (int at = 0; at < stopLimitOrders.length; at += STOP_LIMIT_ORDER_FIELDS) {
+            putOrderFields(out, stopLimitOrders, at);
+            out.putInt((int) stopLimitOrders[at + ORDER_FIELDS]);
+        }
+
+        long[] positions = copy.positions();
+        out.putInt(positions.length / 2);
+        out.ensure(positions.length / 2 * (Long.BYTES + Integer.BYTES));
+        for (int at = 0; at < positions.length; at += 2)
+            out.buffer.putLong(positions[at]).putInt((int) positions[at + 1]);
+        return out.toByteArray();
+    }
+
+    public void save(Path file, long journalSequence, long cutNumber, Map<String, Long> heldBack, List<Broker> brokers,
+                     Collection<byte[]> securityBlocks) throws IOException {
+        Output out = new Output(1 << 20);
+        out.ensure(Integer.BYTES + Short.BYTES + 2 * Long.BYTES);
+        out.buffer.putInt(MAGIC).putShort(VERSION).putLong(journalSequence).putLong(cutNumber);
+        out.putInt(heldBack.size());
+        heldBack.forEach((isin, sequence) -> {
+            out.putString(isin);
+            out.ensure(Long.BYTES);
+            out.buffer.putLong(sequence);
+        });
+
+        out.putInt(brokers.size());
+        for (Broker broker : brokers) {
+            out.ensure(2 * Long.BYTES);
+            out.buffer.putLong(broker.getBrokerId()).putLong(broker.getCredit());
+            out.putString(broker.getName());
+        }
+
+        List<Shareholder> shareholders = new ArrayList<>();
+        shareholderRepository.allShareholders().forEach(shareholders::add);
+        out.putInt(shareholders.size());
+        for (Shareholder shareholder : shareholders) {
+            out.ensure(Long.BYTES);
+            out.buffer.putLong(shareholder.getShareholderId());
+            out.putString(shareholder.getName());
+        }
+
+        out.putInt(securityBlocks.size());
+        for (byte[] block : securityBlocks) {
+            out.putInt(block.length);
+            out.ensure(block.length);
+            out.buffer.put(block);
+        }
+
+        ByteBuffer buffer = out.buffer.flip();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Loaded load(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+            throw new IOException("Not a state snapshot: " + file);
+        long journalSequence = buffer.getLong();
+        long cutNumber = buffer.getLong();
+        Map<String, Long> heldBack = new HashMap<>();
+        int heldBackCount = buffer.getInt();
+        for (int i = 0; i < heldBackCount; i++) {
+            String isin = getString(buffer);
+            heldBack.put(isin, buffer.getLong());
+        }
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+
+        int brokerCount = buffer.getInt();
+        for (int i = 0; i < brokerCount; i++) {
+            long brokerId = buffer.getLong();
+            long credit = buffer.getLong();
+            brokerRepository.addBroker(Broker.builder().brokerId(brokerId).credit(credit).name(getString(buffer)).build());
+        }
+
+        int shareholderCount = buffer.getInt();
+        for (int i = 0; i < shareholderCount; i++) {
+            long shareholderId = buffer.getLong();
+            shareholderRepository.addShareholder(Shareholder.builder().shareholderId(shareholderId).name(getString(buffer)).build());
+        }
+
+        int securityCount = buffer.getInt();
+        for (int i = 0; i < securityCount; i++) {
+            int length = buffer.getInt();
+            loadSecurity(buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN));
+            buffer.position(buffer.position() + length);
+        }
+        return new Loaded(journalSequence, cutNumber, heldBack);
+    }
+
+    private void loadSecurity(ByteBuffer buffer) {
+        String isin = getString(buffer);
+        int tickSize = buffer.getInt();
+        int lotSize = buffer.getInt();
+        MatchingState matchingState = MATCHING_STATES[buffer.get()];
+        int lastTradePrice = buffer.getInt();
+        int reopeningPrice = buffer.getInt();
+        int maxTradableQuantity = buffer.getInt();
+        boolean activationPending = buffer.get() != 0;
+        byte activationTargetState = buffer.get();
+        Security security = Security.builder()
+                .isin(isin)
+                .tickSize(tickSize)
+                .lotSize(lotSize)
+                .currentMatchingState(matchingState)
+                .activationPending(activationPending)
+                .activationTargetState(activationTargetState < 0 ? null : MATCHING_STATES[activationTargetState])
+                .build();
+        MatchingContext context = security.getMatchingContext();
+        context.setLastTradePrice(lastTradePrice);
+        context.setReopeningPrice(reopeningPrice);
+        context.setMaxTradableQuantity(maxTradableQuantity);
+        securityRepository.addSecurity(security);
+
+        OrderBook orderBook = security.getOrderBook();
+        int orderCount = buffer.getInt();
+        for (int i = 0; i < orderCount; i++)
+            orderBook.enqueue(getOrder(buffer, security));
+        InactiveOrderBook inactiveOrderBook = security.getInactiveOrderBook();
+        int stopOrderCount = buffer.getInt();
+        for (int i = 0; i < stopOrderCount; i++)
+            inactiveOrderBook.enqueue(getStopLimitOrder(buffer, security));
+
+        int positionCount = buffer.getInt();
+        for (int i = 0; i < positionCount; i++) {
+            Shareholder shareholder = shareholderRepository.findShareholderById(buffer.getLong());
+            shareholder.incPosition(security, buffer.getInt());
+        }
+    }
+
+    private static void putOrder(Output out, long[] fields, int at) {
+        putOrderFields(out, fields, at);
+        out.ensure(1 + 4 * Integer.BYTES);
+        out.buffer.putInt((int) fields[at + ORDER_FIELDS]).putInt((int) fields[at + ORDER_FIELDS + 1]);
+        if (fields[at + ORDER_FIELDS + 2] == ICEBERG_ORDER) {
+            out.buffer.put(ICEBERG_ORDER).putInt((int) fields[at + ORDER_FIELDS + 3])
+                    .putInt((int) fields[at + ORDER_FIELDS + 4]);
+        } else {
+            out.buffer.put(PLAIN_ORDER);
+        }
+    }
+
+    private static void putOrderFields(Output out, long[] fields, int at) {
+        out.ensure(5 * Long.BYTES + 2 + 3 * Integer.BYTES);
+        out.buffer.putLong(fields[at])
+                .putLong(fields[at + 1])
+                .put((byte) fields[at + 2])
+                .put((byte) fields[at + 3])
+                .putInt((int) fields[at + 4])
+                .putInt((int) fields[at + 5])
+                .putLong(fields[at + 6])
+                .putLong(fields[at + 7])
+                .putLong(fields[at + 8])
+                .putInt((int) fields[at + 9]);
+    }
+
+    private Order getOrder(ByteBuffer buffer, Security security) {
+        long orderId = getOrderId(buffer, security);
+        Side side = SIDES[buffer.get()];
+        OrderStatus status = ORDER_STATUSES[buffer.get()];
+        int quantity = buffer.getInt();
+        int price = buffer.getInt();
+        Broker broker = brokerRepository.findBrokerById(buffer.getLong());
+        Shareholder shareholder = shareholderRepository.findShareholderById(buffer.getLong());
+        LocalDateTime entryTime = getTime(buffer);
+        int minimumExecutionQuantity = buffer.getInt();
+        int initialQuantity = buffer.getInt();
+        if (buffer.get() == ICEBERG_ORDER)
+            return new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    buffer.getInt(), buffer.getInt(), status, minimumExecutionQuantity, initialQuantity);
+        return new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                status, minimumExecutionQuantity, initialQuantity);
+    }
+
+    private StopLimitOrder getStopLimitOrder(ByteBuffer buffer, Security security) {
+        long orderId = getOrderId(buffer, security);
+        Side side = SIDES[buffer.get()];
+        OrderStatus status = ORDER_STATUSES[buffer.get()];
+        int quantity = buffer.getInt();
+        int price = buffer.getInt();
+        Broker broker = brokerRepository.findBrokerById(buffer.getLong());
+        Shareholder shareholder = shareholderRepository.findShareholderById(buffer.getLong());
+        LocalDateTime entryTime = getTime(buffer);
+        return new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                status, buffer.getInt());
+    }
+
+    private static long getOrderId(ByteBuffer buffer, Security security) {
+        long orderId = buffer.getLong();
+        long requestId = buffer.getLong();
+        if (requestId != 0)
+            security.getRequestIds().put(orderId, requestId);
+        return orderId;
+    }
+
+    private static LocalDateTime getTime(ByteBuffer buffer) {
+        long epochSecond = buffer.getLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, buffer.getInt(), ZoneOffset.UTC);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Output {
+        private ByteBuffer buffer;
+
+        Output(int initialCapacity) {
+            buffer = ByteBuffer.allocate(initialCapacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void ensure(int bytes) {
+            if (buffer.remaining() >= bytes)
+                return;
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            ensure(Short.BYTES + bytes.length);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[buffer.position()];
+            buffer.get(0, bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ir.ramtung.tinyme.util;
+
+@FunctionalInterface
+public interface BatchHandler<E> {
+    void onEvent(E element, boolean endOfBatch);
+}
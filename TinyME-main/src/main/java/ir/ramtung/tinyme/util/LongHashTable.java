@@ -0,0 +1,150 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.Arrays;
+
+/**
+ * Key table shared by the open-addressing maps with primitive {@code long} keys.
+ * It owns hashing, linear probing, backward-shift deletion and growth; a subclass
+ * only keeps its values in a parallel array and moves them when told to, so no
+ * tombstones are kept and keys are never boxed.
+ */
+abstract class LongHashTable {
+    static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private boolean[] used;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    LongHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    abstract void moveValue(int from, int to);
+
+    abstract void clearValue(int slot);
+
+    abstract void clearValues();
+
+    /**
+     * Replaces the value array with one of {@code capacity} slots and returns the
+     * old array, whose values {@link #copyValue} then moves into the new one.
+     */
+    abstract Object swapValues(int capacity);
+
+    abstract void copyValue(Object oldValues, int from, int to);
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or -1 when it is absent.
+     */
+    final int find(long key) {
+        int slot = slotOf(key);
+        while (used[slot]) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or the bitwise complement of the free
+     * slot where it belongs when it is absent.
+     */
+    final int probe(long key) {
+        int slot = slotOf(key);
+        while (used[slot]) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    /**
+     * Claims a free slot returned by {@link #probe} once its value is in place.
+     * The table may grow, so slot numbers are not valid afterwards.
+     */
+    final void occupy(int slot, long key) {
+        used[slot] = true;
+        keys[slot] = key;
+        if (++size > resizeThreshold)
+            rehash(keys.length << 1);
+    }
+
+    final void removeAt(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                moveValue(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        clearValue(gap);
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        Object oldValues = swapValues(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (!oldUsed[i])
+                continue;
+            int slot = ~probe(oldKeys[i]);
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            copyValue(oldValues, i, slot);
+        }
+    }
+
+    /**
+     * Returns the first occupied slot at or after {@code from}, or -1 when there is none.
+     */
+    final int nextOccupied(int from) {
+        for (int slot = from; slot < used.length; slot++) {
+            if (used[slot])
+                return slot;
+        }
+        return -1;
+    }
+
+    final int capacity() {
+        return keys.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        clearValues();
+        size = 0;
+    }
+}
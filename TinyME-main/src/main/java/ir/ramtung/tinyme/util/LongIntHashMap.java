@@ -0,0 +1,63 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing counter map from primitive {@code long} keys to {@code int} values.
+ * Absent keys read as zero and entries that drop back to zero are removed, so the
+ * map only holds keys with a non-zero running total.
+ */
+public class LongIntHashMap extends LongHashTable {
+    private int[] values;
+
+    public LongIntHashMap() {
+        super(DEFAULT_CAPACITY);
+        values = new int[capacity()];
+    }
+
+    public int get(long key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : values[slot];
+    }
+
+    public void addTo(long key, int delta) {
+        if (delta == 0)
+            return;
+        int slot = probe(key);
+        if (slot >= 0) {
+            values[slot] += delta;
+            if (values[slot] == 0)
+                removeAt(slot);
+            return;
+        }
+        values[~slot] = delta;
+        occupy(~slot, key);
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = 0;
+    }
+
+    @Override
+    void clearValues() {
+        Arrays.fill(values, 0);
+    }
+
+    @Override
+    Object swapValues(int capacity) {
+        int[] oldValues = values;
+        values = new int[capacity];
+        return oldValues;
+    }
+
+    @Override
+    void copyValue(Object oldValues, int from, int to) {
+        values[to] = ((int[]) oldValues)[from];
+    }
+}
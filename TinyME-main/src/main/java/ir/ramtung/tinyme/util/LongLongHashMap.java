@@ -0,0 +1,93 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to {@code long} values.
+ * Absent keys read as zero. Besides plain removal, a key can be retired: it stays
+ * readable until {@link #evictRetired} runs and drops every retired key the given
+ * predicate does not keep.
+ */
+public class LongLongHashMap extends LongHashTable {
+    private long[] values;
+    private long[] retired = new long[DEFAULT_CAPACITY];
+    private int retiredCount;
+
+    public LongLongHashMap() {
+        super(DEFAULT_CAPACITY);
+        values = new long[capacity()];
+    }
+
+    public long get(long key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    public void put(long key, long value) {
+        int slot = probe(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+        values[~slot] = value;
+        occupy(~slot, key);
+    }
+
+    public void remove(long key) {
+        int slot = find(key);
+        if (slot >= 0)
+            removeAt(slot);
+    }
+
+    public void retire(long key) {
+        if (retiredCount == retired.length)
+            retired = Arrays.copyOf(retired, retiredCount << 1);
+        retired[retiredCount++] = key;
+    }
+
+    public void evictRetired(LongPredicate keep) {
+        for (int i = 0; i < retiredCount; i++) {
+            if (!keep.test(retired[i]))
+                remove(retired[i]);
+        }
+        retiredCount = 0;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        retiredCount = 0;
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = 0;
+    }
+
+    @Override
+    void clearValues() {
+        Arrays.fill(values, 0);
+    }
+
+    @Override
+    Object swapValues(int capacity) {
+        long[] oldValues = values;
+        values = new long[capacity];
+        return oldValues;
+    }
+
+    @Override
+    void copyValue(Object oldValues, int from, int to) {
+        values[to] = ((long[]) oldValues)[from];
+    }
+}
@@ -0,0 +1,108 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to object values.
+ * Null values are not allowed.
+ */
+public class LongObjectHashMap<V> extends LongHashTable {
+    private Object[] values;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        super(expectedSize);
+        values = new Object[capacity()];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("Null values are not allowed");
+        int slot = probe(key);
+        if (slot >= 0) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        values[~slot] = value;
+        occupy(~slot, key);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = find(key);
+        if (slot < 0)
+            return null;
+        V previous = (V) values[slot];
+        removeAt(slot);
+        return previous;
+    }
+
+    /**
+     * Iterates over the values in slot order. The map must not be changed while iterating.
+     */
+    public Iterable<V> values() {
+        return () -> new Iterator<>() {
+            private int slot = nextOccupied(0);
+
+            @Override
+            public boolean hasNext() {
+                return slot >= 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (slot < 0)
+                    throw new NoSuchElementException();
+                V value = (V) values[slot];
+                slot = nextOccupied(slot + 1);
+                return value;
+            }
+        };
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = null;
+    }
+
+    @Override
+    void clearValues() {
+        Arrays.fill(values, null);
+    }
+
+    @Override
+    Object swapValues(int capacity) {
+        Object[] oldValues = values;
+        values = new Object[capacity];
+        return oldValues;
+    }
+
+    @Override
+    void copyValue(Object oldValues, int from, int to) {
+        values[to] = ((Object[]) oldValues)[from];
+    }
+}
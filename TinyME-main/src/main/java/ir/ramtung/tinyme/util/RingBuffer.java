@@ -0,0 +1,89 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer with pre-allocated slots.
+ * Every slot carries a sequence number telling whether it is free for the
+ * producer of a given lap or filled for the consumer, so producers only contend
+ * on claiming the tail and the consumer never takes a lock.
+ */
+public class RingBuffer<E> {
+    private static final long FULL_BACKOFF_NANOS = 1_000;
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Ring buffer capacity must be positive");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0)
+            size = 1;
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public boolean offer(E element) {
+        if (element == null)
+            throw new NullPointerException();
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = element;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+    }
+
+    public void put(E element) {
+        while (!offer(element)) {
+            LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+            if (Thread.currentThread().isInterrupted())
+                throw new IllegalStateException("Interrupted while waiting for room in the ring buffer");
+        }
+    }
+
+    /**
+     * Hands up to {@code limit} elements to the handler in publication order.
+     * Must only be called from the single consumer thread.
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(BatchHandler<? super E> handler, int limit) {
+        int available = 0;
+        while (available < limit && sequences.get((int) (head + available) & mask) == head + available + 1)
+            available++;
+        for (int i = 0; i < available; i++) {
+            int index = (int) head & mask;
+            E element = (E) slots[index];
+            slots[index] = null;
+            sequences.lazySet(index, head + slots.length);
+            head++;
+            handler.onEvent(element, i == available - 1);
+        }
+        return available;
+    }
+
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,68 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Consumer thread of one pipeline stage. It drains its ring buffer in batches,
+ * spins briefly and then parks while the buffer is empty, and on {@link #halt()}
+ * finishes whatever has already been published before it exits. A stage may be
+ * given a stripe number, which state shared between stages uses to keep one
+ * single-writer slot per thread; any other thread has {@link #NO_STRIPE}.
+ */
+public class StageThread<E> extends Thread {
+    public static final int NO_STRIPE = -1;
+    private static final int SPIN_TRIES = 100;
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RingBuffer<E> ringBuffer;
+    private final BatchHandler<? super E> handler;
+    private final int batchSize;
+    private final int stripe;
+    private volatile boolean running = true;
+
+    public StageThread(String name, RingBuffer<E> ringBuffer, BatchHandler<? super E> handler, int batchSize) {
+        this(name, ringBuffer, handler, batchSize, NO_STRIPE);
+    }
+
+    public StageThread(String name, RingBuffer<E> ringBuffer, BatchHandler<? super E> handler, int batchSize, int stripe) {
+        super(name);
+        this.ringBuffer = ringBuffer;
+        this.handler = handler;
+        this.batchSize = batchSize;
+        this.stripe = stripe;
+    }
+
+    public static int currentStripe() {
+        return Thread.currentThread() instanceof StageThread<?> stage ? stage.stripe : NO_STRIPE;
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        while (running || !ringBuffer.isEmpty()) {
+            int drained;
+            try {
+                drained = ringBuffer.drain(handler, batchSize);
+            } catch (RuntimeException e) {
+                log.log(Level.SEVERE, "Event failed on " + getName(), e);
+                continue;
+            }
+            if (drained > 0) {
+                idle = 0;
+            } else if (++idle < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    public void halt() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(this);
+        join();
+    }
+}
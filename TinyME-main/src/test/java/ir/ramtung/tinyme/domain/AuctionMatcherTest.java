@@ -692,7 +692,7 @@ public class AuctionMatcherTest {
 
         change_matching_state_to(MatchingState.AUCTION);
 
-        assertThat(matcher.getLastTradePrice()).isEqualTo(matcher.getReopeningPrice());
+        assertThat(security.getMatchingContext().getLastTradePrice()).isEqualTo(security.getMatchingContext().getReopeningPrice());
         assertThat(broker1.getCredit()).isEqualTo(BROKER_1_CREDIT + 100 * 15810);
         assertThat(broker2.getCredit()).isEqualTo(BROKER_2_CREDIT - (100 * 15810));
     }
@@ -0,0 +1,39 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.CreditDecisionLog;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CreditDecisionLogTest {
+    @Test
+    void only_outcomes_decided_while_recording_are_drained() {
+        CreditDecisionLog log = new CreditDecisionLog();
+        Broker broker = Broker.builder().brokerId(1).credit(150).build();
+        assertThat(log.reserve(broker, 100)).isTrue();
+        assertThat(log.drain()).isEmpty();
+
+        log.startRecording();
+        assertThat(log.reserve(broker, 100)).isFalse();
+        assertThat(log.reserve(broker, 50)).isTrue();
+        assertThat(log.drain()).containsExactly(false, true);
+        assertThat(log.drain()).isEmpty();
+    }
+
+    @Test
+    void replayed_outcomes_are_kept_whatever_the_balance() {
+        CreditDecisionLog log = new CreditDecisionLog();
+        Broker broker = Broker.builder().brokerId(1).credit(100).build();
+        log.startRecording();
+        log.replay(new boolean[]{false, true});
+
+        assertThat(log.reserve(broker, 50)).isFalse();
+        assertThat(log.reserve(broker, 150)).isTrue();
+        assertThat(broker.getCredit()).isEqualTo(-50);
+        assertThat(log.drain()).isEmpty();
+
+        assertThat(log.reserve(broker, 10)).isFalse();
+        assertThat(log.drain()).containsExactly(false);
+    }
+}
@@ -0,0 +1,86 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.CreditLedger;
+import ir.ramtung.tinyme.util.RingBuffer;
+import ir.ramtung.tinyme.util.StageThread;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CreditLedgerTest {
+    @Test
+    void reservation_fails_without_touching_balance_when_credit_is_not_enough() {
+        CreditLedger ledger = new CreditLedger(100);
+        assertThat(ledger.tryReserve(60)).isTrue();
+        assertThat(ledger.tryReserve(60)).isFalse();
+        assertThat(ledger.balance()).isEqualTo(40);
+        ledger.release(60);
+        assertThat(ledger.tryReserve(100)).isTrue();
+        assertThat(ledger.balance()).isEqualTo(0);
+    }
+
+    @Test
+    void concurrent_reservations_never_overdraw_the_balance() throws InterruptedException {
+        CreditLedger ledger = new CreditLedger(10_000);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1000; i++) {
+                    if (ledger.tryReserve(7))
+                        granted.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(granted.get()).isEqualTo(10_000 / 7);
+        assertThat(ledger.balance()).isEqualTo(10_000 % 7);
+    }
+
+    @Test
+    void changes_are_kept_on_the_stripe_of_the_stage_that_made_them() throws InterruptedException {
+        CreditLedger ledger = new CreditLedger(1_000);
+        RingBuffer<Long> ringBuffer = new RingBuffer<>(8);
+        StageThread<Long> stage = new StageThread<>("stage", ringBuffer, (amount, endOfBatch) -> ledger.withdraw(amount), 4, 2);
+        stage.start();
+        ringBuffer.put(100L);
+        ringBuffer.put(50L);
+        stage.halt();
+        ledger.release(30);
+
+        assertThat(ledger.changeOn(2)).isEqualTo(-150);
+        assertThat(ledger.changeOn(1)).isEqualTo(0);
+        assertThat(ledger.changeOn(0)).isEqualTo(0);
+        assertThat(ledger.changeOutsideStages()).isEqualTo(30);
+        assertThat(ledger.initialBalance() + ledger.changeOutsideStages() + ledger.changeOn(2)).isEqualTo(ledger.balance());
+    }
+
+    @Test
+    void changes_from_outside_the_stages_do_not_race_the_first_stage() throws InterruptedException {
+        CreditLedger ledger = new CreditLedger(1_000_000);
+        RingBuffer<Long> ringBuffer = new RingBuffer<>(1024);
+        StageThread<Long> stage = new StageThread<>("stage", ringBuffer, (amount, endOfBatch) -> ledger.withdraw(amount), 64, 0);
+        stage.start();
+        for (int i = 0; i < 100_000; i++) {
+            ringBuffer.put(1L);
+            ledger.release(1);
+        }
+        stage.halt();
+
+        assertThat(ledger.changeOn(0)).isEqualTo(-100_000);
+        assertThat(ledger.changeOutsideStages()).isEqualTo(100_000);
+        assertThat(ledger.balance()).isEqualTo(1_000_000);
+    }
+}
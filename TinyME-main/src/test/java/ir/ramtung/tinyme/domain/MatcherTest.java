@@ -15,6 +15,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @SpringBootTest
 @Import(MockedJMSTestConfig.class)
@@ -130,4 +131,27 @@ public class MatcherTest {
         assertThat(result.remainder().getQuantity()).isEqualTo(80);
         assertThat(result.trades()).isEqualTo(trades);
     }
+
+    @Test
+    void rolled_back_trades_restore_the_sell_queue() {
+        Broker buyer = Broker.builder().brokerId(2).credit(6_000_000L).build();
+        Order order = new Order(11, security, Side.BUY, 700, 15810, buyer, shareholder);
+
+        MatchResult result = matcher.match(order);
+
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_CREDIT);
+        assertThat(buyer.getCredit()).isEqualTo(6_000_000L);
+        assertThat(security.getOrderBook().getSellQueue())
+                .extracting(Order::getOrderId, Order::getQuantity)
+                .startsWith(tuple(6L, 350), tuple(7L, 285), tuple(8L, 800));
+    }
+
+    @Test
+    void last_trade_price_is_kept_per_security() {
+        Security otherSecurity = Security.builder().isin("XYZ").build();
+        Order order = new Order(11, security, Side.SELL, 100, 15600, broker, shareholder);
+        matcher.execute(order);
+        assertThat(security.getMatchingContext().getLastTradePrice()).isEqualTo(15700);
+        assertThat(otherSecurity.getMatchingContext().getLastTradePrice()).isEqualTo(0);
+    }
 }
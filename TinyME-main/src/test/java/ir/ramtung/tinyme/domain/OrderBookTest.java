@@ -76,4 +76,86 @@ class OrderBookTest {
         orderBook.removeByOrderId(Side.SELL, 10);
         assertThat(orderBook.getSellQueue()).isEqualTo(orders.subList(5, 9));
     }
-}
\ No newline at end of file
+
+    @Test
+    void enqueues_new_order_behind_orders_with_the_same_price() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = new Order(11, security, Side.BUY, 100, 15450, orders.get(0).getBroker(), orders.get(0).getShareholder());
+        orderBook.enqueue(order);
+        assertThat(orderBook.getBuyQueue()).containsExactly(orders.get(0), orders.get(1), orders.get(2),
+                orders.get(3), order, orders.get(4));
+    }
+
+    @Test
+    void puts_back_order_in_front_of_its_price_level() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = orders.get(6).snapshot();
+        orderBook.removeFirst(Side.SELL);
+        orderBook.removeFirst(Side.SELL);
+        orderBook.putBack(order);
+        assertThat(orderBook.getSellQueue()).containsExactly(order, orders.get(7), orders.get(8), orders.get(9));
+    }
+
+    @Test
+    void removes_an_order_in_the_middle_of_a_price_level_by_id() {
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.removeByOrderId(Side.SELL, 7);
+        assertThat(orderBook.findByOrderId(Side.SELL, 7)).isNull();
+        assertThat(orderBook.getSellQueue()).containsExactly(orders.get(5), orders.get(7), orders.get(8), orders.get(9));
+    }
+
+    @Test
+    void keeps_total_sell_quantity_of_shareholder_up_to_date() {
+        OrderBook orderBook = security.getOrderBook();
+        Shareholder shareholder = orders.get(5).getShareholder();
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1840);
+        orderBook.decreaseQuantity(orders.get(5), 100);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1740);
+        orderBook.removeByOrderId(Side.SELL, 7);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1455);
+        orderBook.removeByOrderId(Side.BUY, 1);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1455);
+    }
+
+    @Test
+    void keeps_auction_depth_up_to_date_with_the_book() {
+        OrderBook orderBook = security.getOrderBook();
+        AuctionDepth auctionDepth = orderBook.getAuctionDepth();
+        auctionDepth.calculate(15600);
+        assertThat(auctionDepth.getReopeningPrice()).isEqualTo(0);
+        assertThat(auctionDepth.getTradableQuantity()).isEqualTo(0);
+
+        orderBook.enqueue(new Order(11, security, Side.SELL, 500, 15450, orders.get(0).getBroker(), orders.get(0).getShareholder()));
+        auctionDepth.calculate(15600);
+        assertThat(auctionDepth.getReopeningPrice()).isEqualTo(15450);
+        assertThat(auctionDepth.getTradableQuantity()).isEqualTo(500);
+
+        orderBook.decreaseQuantity(orders.get(0), 200);
+        orderBook.removeByOrderId(Side.BUY, 3);
+        auctionDepth.calculate(15600);
+        assertThat(auctionDepth.getReopeningPrice()).isEqualTo(15450);
+        assertThat(auctionDepth.getTradableQuantity()).isEqualTo(500);
+
+        orderBook.removeByOrderId(Side.SELL, 11);
+        auctionDepth.calculate(15600);
+        assertThat(auctionDepth.getReopeningPrice()).isEqualTo(0);
+        assertThat(auctionDepth.getTradableQuantity()).isEqualTo(0);
+    }
+
+    @Test
+    void auction_depth_is_rebuilt_from_the_book_when_it_was_not_tracked() {
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.enqueue(new Order(11, security, Side.SELL, 500, 15450, orders.get(0).getBroker(), orders.get(0).getShareholder()));
+        AuctionDepth auctionDepth = orderBook.getAuctionDepth();
+        auctionDepth.calculate(15600);
+        assertThat(auctionDepth.getReopeningPrice()).isEqualTo(15450);
+        assertThat(auctionDepth.getTradableQuantity()).isEqualTo(500);
+
+        orderBook.stopTrackingAuctionDepth();
+        orderBook.removeByOrderId(Side.SELL, 11);
+        auctionDepth = orderBook.getAuctionDepth();
+        auctionDepth.calculate(15600);
+        assertThat(auctionDepth.getReopeningPrice()).isEqualTo(0);
+        assertThat(auctionDepth.getTradableQuantity()).isEqualTo(0);
+    }
+}
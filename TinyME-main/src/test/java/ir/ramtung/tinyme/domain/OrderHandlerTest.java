@@ -11,6 +11,7 @@ import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
 import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
 import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
 import ir.ramtung.tinyme.messaging.event.OrderUpdatedEvent;
+import ir.ramtung.tinyme.messaging.request.BatchOrderEntry;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.repository.BrokerRepository;
@@ -20,6 +21,7 @@ import net.bytebuddy.asm.Advice;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.internal.matchers.Or;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -102,6 +104,68 @@ public class OrderHandlerTest {
         orderHandler.handleEnterOrder(enterOrderRq);
         verify(eventPublisher).publishAcceptedOrderEvent(enterOrderRq);
     }
+    @Test
+    void request_ids_of_filled_orders_are_evicted_by_the_next_request() {
+        Broker buyer = Broker.builder().brokerId(3).credit(100_000_000L).build();
+        brokerRepository.addBroker(buyer);
+
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(1, "ABC", 200, LocalDateTime.now(),
+                Side.SELL, 300, 15450, 2, shareholder.getShareholderId(), 0));
+        assertThat(security.getRequestIds().get(200)).isEqualTo(1);
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(2, "ABC", 300, LocalDateTime.now(),
+                Side.BUY, 300, 15450, 3, shareholder.getShareholderId(), 0));
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(3, "ABC", 400, LocalDateTime.now(),
+                Side.SELL, 100, 15600, 2, shareholder.getShareholderId(), 0));
+
+        assertThat(security.getRequestIds().containsKey(200)).isFalse();
+        assertThat(security.getRequestIds().containsKey(300)).isFalse();
+        assertThat(security.getRequestIds().get(400)).isEqualTo(3);
+        assertThat(security.getRequestIds().size()).isEqualTo(1);
+    }
+
+    @Test
+    void batch_entries_are_handled_in_order() {
+        EnterOrderRq sellRq = EnterOrderRq.createNewOrderRq(1, "ABC", 200, LocalDateTime.now(),
+                Side.SELL, 300, 15450, 2, shareholder.getShareholderId(), 0);
+        EnterOrderRq updateRq = EnterOrderRq.createUpdateOrderRq(2, "ABC", 200, LocalDateTime.now(),
+                Side.SELL, 300, 15500, 2, shareholder.getShareholderId(), 0);
+        DeleteOrderRq deleteRq = new DeleteOrderRq(3, "ABC", Side.SELL, 200);
+
+        orderHandler.handleBatch(List.of(BatchOrderEntry.enter(sellRq), BatchOrderEntry.enter(updateRq),
+                BatchOrderEntry.delete(deleteRq)), security);
+
+        InOrder inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publishAcceptedOrderEvent(sellRq);
+        inOrder.verify(eventPublisher).publishOrderUpdatedEvent(updateRq);
+        inOrder.verify(eventPublisher).publishOrderDeletedEvent(deleteRq);
+        assertThat(security.getOrderBook().getSellQueue()).isEmpty();
+    }
+
+    @Test
+    void batch_on_an_unknown_security_rejects_every_entry() {
+        EnterOrderRq enterRq = EnterOrderRq.createNewOrderRq(1, "XXX", 200, LocalDateTime.now(),
+                Side.SELL, 300, 15450, 2, shareholder.getShareholderId(), 0);
+        DeleteOrderRq deleteRq = new DeleteOrderRq(2, "XXX", Side.SELL, 200);
+
+        orderHandler.handleBatch(List.of(BatchOrderEntry.enter(enterRq), BatchOrderEntry.delete(deleteRq)), null);
+
+        verify(eventPublisher).publishOrderRejectedEvent(1, 200, List.of(Message.UNKNOWN_SECURITY_ISIN));
+        verify(eventPublisher).publishOrderRejectedEvent(deleteRq, List.of(Message.UNKNOWN_SECURITY_ISIN));
+    }
+
+    @Test
+    void batch_entries_get_their_own_checks() {
+        EnterOrderRq invalidRq = EnterOrderRq.createNewOrderRq(1, "ABC", 200, LocalDateTime.now(),
+                Side.SELL, 300, -1, 2, shareholder.getShareholderId(), 0);
+        EnterOrderRq validRq = EnterOrderRq.createNewOrderRq(2, "ABC", 300, LocalDateTime.now(),
+                Side.SELL, 300, 15450, 2, shareholder.getShareholderId(), 0);
+
+        orderHandler.handleBatch(List.of(BatchOrderEntry.enter(invalidRq), BatchOrderEntry.enter(validRq)), security);
+
+        verify(eventPublisher).publishOrderRejectedEvent(1, 200, List.of(Message.ORDER_PRICE_NOT_POSITIVE));
+        verify(eventPublisher).publishAcceptedOrderEvent(validRq);
+    }
+
     @Test
     void new_order_matched_partially_with_two_trades() {
         Order matchingBuyOrder1 = new Order(100, security, Side.BUY, 300, 15500, broker1, shareholder);
@@ -0,0 +1,92 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrderPoolTest {
+    private Security security;
+    private Broker broker;
+    private Shareholder shareholder;
+    private OrderPool pool;
+
+    @BeforeEach
+    void setup() {
+        security = Security.builder().isin("ABC").build();
+        broker = Broker.builder().brokerId(1).credit(100_000_000L).build();
+        shareholder = Shareholder.builder().shareholderId(1).build();
+        pool = security.getOrderPool();
+    }
+
+    private Order takeOrder(long orderId, int quantity) {
+        return pool.order(orderId, security, Side.BUY, quantity, 15000, broker, shareholder,
+                LocalDateTime.now(), OrderStatus.NEW, 0);
+    }
+
+    @Test
+    void retired_order_is_reused_with_the_new_values() {
+        Order first = takeOrder(1, 100);
+        pool.retire(first);
+
+        Order second = takeOrder(2, 50);
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getOrderId()).isEqualTo(2);
+        assertThat(second.getQuantity()).isEqualTo(50);
+        assertThat(second.getInitialQuantity()).isEqualTo(50);
+        assertThat(second.getStatus()).isEqualTo(OrderStatus.NEW);
+    }
+
+    @Test
+    void orders_are_reused_only_by_their_own_kind() {
+        Order order = takeOrder(1, 100);
+        pool.retire(order);
+
+        IcebergOrder iceberg = pool.icebergOrder(2, security, Side.SELL, 500, 15000, broker, shareholder,
+                LocalDateTime.now(), 100, OrderStatus.NEW, 0);
+
+        assertThat(iceberg).isNotSameAs(order);
+        assertThat(iceberg.getDisplayedQuantity()).isEqualTo(100);
+        assertThat(takeOrder(3, 10)).isSameAs(order);
+    }
+
+    @Test
+    void orders_not_taken_from_the_pool_are_never_reused() {
+        Order order = new Order(1, security, Side.BUY, 100, 15000, broker, shareholder);
+        pool.retire(order);
+
+        assertThat(takeOrder(2, 50)).isNotSameAs(order);
+        assertThat(order.getOrderId()).isEqualTo(1);
+    }
+
+    @Test
+    void an_order_retired_twice_is_reused_once() {
+        Order order = takeOrder(1, 100);
+        pool.retire(order);
+        pool.retire(order);
+
+        assertThat(takeOrder(2, 50)).isSameAs(order);
+        assertThat(takeOrder(3, 50)).isNotSameAs(order);
+    }
+
+    @Test
+    void an_order_replaced_by_a_rollback_is_released() {
+        Order sell = pool.order(1, security, Side.SELL, 100, 15000, broker, shareholder,
+                LocalDateTime.now(), OrderStatus.NEW, 0);
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.enqueue(sell);
+        Order beforeTrade = sell.snapshot();
+        orderBook.decreaseQuantity(sell, 40);
+
+        orderBook.restoreOrder(beforeTrade);
+
+        assertThat(pool.issuedCount()).isEqualTo(1);
+        assertThat(orderBook.findByOrderId(Side.SELL, 1)).isSameAs(beforeTrade);
+        assertThat(beforeTrade.getQuantity()).isEqualTo(100);
+        assertThat(takeOrder(2, 50)).isSameAs(sell);
+    }
+}
@@ -0,0 +1,67 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShareholderTest {
+    @Test
+    void positions_are_kept_per_security() {
+        List<Security> securities = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            securities.add(Security.builder().isin("S" + i).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+
+        for (int i = 0; i < securities.size(); i++)
+            shareholder.incPosition(securities.get(i), i);
+        shareholder.decPosition(securities.get(150), 50);
+
+        assertThat(shareholder.getPosition(securities.get(0))).isZero();
+        assertThat(shareholder.getPosition(securities.get(70))).isEqualTo(70);
+        assertThat(shareholder.getPosition(securities.get(150))).isEqualTo(100);
+        assertThat(shareholder.getPosition(securities.get(199))).isEqualTo(199);
+        assertThat(shareholder.hasEnoughPositionsOn(securities.get(199), 199)).isTrue();
+        assertThat(shareholder.hasEnoughPositionsOn(securities.get(199), 200)).isFalse();
+    }
+
+    @Test
+    void registered_securities_get_dense_indexes_that_survive_replacement() {
+        SecurityRepository securityRepository = new SecurityRepository();
+        Security unregistered = Security.builder().isin("XYZ").build();
+        Security abc = Security.builder().isin("ABC").build();
+        Security def = Security.builder().isin("DEF").build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(def);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(unregistered, 5);
+        shareholder.incPosition(def, 20);
+
+        Security replacement = Security.builder().isin("DEF").build();
+        securityRepository.addSecurity(replacement);
+
+        assertThat(unregistered.getIndex()).isEqualTo(Security.UNREGISTERED);
+        assertThat(abc.getIndex()).isZero();
+        assertThat(replacement.getIndex()).isEqualTo(1);
+        assertThat(shareholder.getPosition(unregistered)).isEqualTo(5);
+        assertThat(shareholder.getPosition(abc)).isZero();
+        assertThat(shareholder.getPosition(replacement)).isEqualTo(20);
+        assertThat(replacement.getHolders()).containsExactly(shareholder);
+    }
+
+    @Test
+    void position_cannot_go_below_zero() {
+        Security security = Security.builder().isin("ABC").build();
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 10);
+
+        assertThatThrownBy(() -> shareholder.decPosition(security, 11)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(shareholder.getPosition(security)).isEqualTo(10);
+    }
+}
@@ -10,6 +10,7 @@ import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
 import ir.ramtung.tinyme.messaging.event.OrderActivateEvent;
 import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
 import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.request.BatchOrderEntry;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.repository.BrokerRepository;
@@ -23,12 +24,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -422,5 +425,106 @@ public class StopLimitOrderTest {
         assertThatNoException().isThrownBy(() -> orderHandler.handleEnterOrder(updateOrderRq));
         verify(eventPublisher).publishOrderActivateEvent(4, 2);
     }
-}
 
+    @Test
+    void inactive_orders_activate_by_stop_price_then_arrival() {
+        inactiveOrderBook.enqueue(new StopLimitOrder(11, security, Side.BUY, 10, 15900, broker, shareholder, 15600));
+        inactiveOrderBook.enqueue(new StopLimitOrder(12, security, Side.BUY, 10, 15900, broker, shareholder, 15400));
+        inactiveOrderBook.enqueue(new StopLimitOrder(13, security, Side.BUY, 10, 15900, broker, shareholder, 15500));
+        inactiveOrderBook.enqueue(new StopLimitOrder(14, security, Side.BUY, 10, 15900, broker, shareholder, 15400));
+        inactiveOrderBook.enqueue(new StopLimitOrder(15, security, Side.SELL, 10, 15000, broker, shareholder, 15500));
+        inactiveOrderBook.enqueue(new StopLimitOrder(16, security, Side.SELL, 10, 15000, broker, shareholder, 15550));
+
+        assertThat(inactiveOrderBook.getActivationCandidateOrder(15500).getOrderId()).isEqualTo(16);
+        assertThat(inactiveOrderBook.getActivationCandidateOrder(15500).getOrderId()).isEqualTo(15);
+        assertThat(inactiveOrderBook.getActivationCandidateOrder(15500).getOrderId()).isEqualTo(12);
+        assertThat(inactiveOrderBook.getActivationCandidateOrder(15500).getOrderId()).isEqualTo(14);
+        assertThat(inactiveOrderBook.getActivationCandidateOrder(15500).getOrderId()).isEqualTo(13);
+        assertThat(inactiveOrderBook.getActivationCandidateOrder(15500)).isNull();
+        assertThat(inactiveOrderBook.getInactiveBuyQueue()).extracting(Order::getOrderId).containsExactly(11L);
+    }
+
+    @Test
+    void cascade_beyond_the_activation_quantum_is_scheduled_and_resumed() {
+        OrderHandler boundedOrderHandler = new OrderHandler(securityRepository, brokerRepository,
+                shareholderRepository, eventPublisher, matcher);
+        List<String> scheduled = new ArrayList<>();
+        boundedOrderHandler.setActivationScheduler(scheduled::add, 1);
+        Broker testBroker = Broker.builder().credit(20_000_000).brokerId(2).build();
+        brokerRepository.addBroker(testBroker);
+
+        boundedOrderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRqWithStopPrice(4, security.getIsin(), 3,
+                LocalDateTime.now(), Side.BUY, 90, 15810, testBroker.getBrokerId(),
+                shareholder.getShareholderId(), 0, 15810));
+        boundedOrderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRqWithStopPrice(5, security.getIsin(), 4,
+                LocalDateTime.now(), Side.BUY, 80, 15810, testBroker.getBrokerId(),
+                shareholder.getShareholderId(), 0, 15809));
+        boundedOrderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(6, security.getIsin(), 5,
+                LocalDateTime.now(), Side.BUY, 10, 15810, 2,
+                shareholder.getShareholderId(), 0));
+
+        verify(eventPublisher).publishOrderActivateEvent(5, 4);
+        verify(eventPublisher, never()).publishOrderActivateEvent(4, 3);
+        assertThat(scheduled).containsExactly(security.getIsin());
+        assertThat(security.isActivationPending()).isTrue();
+
+        boundedOrderHandler.continueActivation(security);
+
+        verify(eventPublisher).publishOrderActivateEvent(4, 3);
+        assertThat(security.isActivationPending()).isFalse();
+        assertThat(inactiveOrderBook.findByOrderId(Side.BUY, 3)).isNull();
+        assertThat(testBroker.getCredit()).isEqualTo(20_000_000 - ((10 + 90 + 80) * 15810));
+    }
+
+    private List<BatchOrderEntry> batchStartingACascade() {
+        return List.of(
+                BatchOrderEntry.enter(EnterOrderRq.createNewOrderRqWithStopPrice(4, security.getIsin(), 3,
+                        LocalDateTime.now(), Side.BUY, 90, 15820, 2, shareholder.getShareholderId(), 0, 15810)),
+                BatchOrderEntry.enter(EnterOrderRq.createNewOrderRqWithStopPrice(5, security.getIsin(), 4,
+                        LocalDateTime.now(), Side.BUY, 80, 15820, 2, shareholder.getShareholderId(), 0, 15809)),
+                BatchOrderEntry.enter(EnterOrderRq.createNewOrderRqWithStopPrice(6, security.getIsin(), 10,
+                        LocalDateTime.now(), Side.BUY, 50, 15820, 2, shareholder.getShareholderId(), 0, 15808)),
+                BatchOrderEntry.enter(EnterOrderRq.createNewOrderRq(7, security.getIsin(), 5,
+                        LocalDateTime.now(), Side.BUY, 10, 15810, 2, shareholder.getShareholderId(), 0)),
+                BatchOrderEntry.enter(EnterOrderRq.createNewOrderRq(8, security.getIsin(), 9,
+                        LocalDateTime.now(), Side.SELL, 100, 15800, 2, shareholder.getShareholderId(), 0)));
+    }
+
+    private List<String> queuesOf(Security security) {
+        List<String> queues = new ArrayList<>();
+        for (Order order : security.getOrderBook().getBuyQueue())
+            queues.add("BUY " + order.getOrderId() + " " + order.getQuantity());
+        for (Order order : security.getOrderBook().getSellQueue())
+            queues.add("SELL " + order.getOrderId() + " " + order.getQuantity());
+        return queues;
+    }
+
+    @Test
+    void cascade_started_inside_a_batch_ends_before_the_next_entry_as_on_replay() {
+        OrderHandler boundedOrderHandler = new OrderHandler(securityRepository, brokerRepository,
+                shareholderRepository, eventPublisher, matcher);
+        List<String> scheduled = new ArrayList<>();
+        boundedOrderHandler.setActivationScheduler(scheduled::add, 1);
+        Broker liveBroker = Broker.builder().credit(20_000_000).brokerId(2).build();
+        brokerRepository.addBroker(liveBroker);
+
+        boundedOrderHandler.handleBatch(batchStartingACascade(), security);
+
+        assertThat(scheduled).isEmpty();
+        assertThat(security.isActivationPending()).isFalse();
+        List<String> liveQueues = queuesOf(security);
+        long liveCredit = liveBroker.getCredit();
+
+        setupOrderBook();
+        OrderHandler replayingOrderHandler = new OrderHandler(securityRepository, brokerRepository,
+                shareholderRepository, eventPublisher, matcher);
+        Broker replayedBroker = Broker.builder().credit(20_000_000).brokerId(2).build();
+        brokerRepository.addBroker(replayedBroker);
+
+        replayingOrderHandler.handleBatch(batchStartingACascade(), security);
+
+        assertThat(queuesOf(security)).isEqualTo(liveQueues);
+        assertThat(replayedBroker.getCredit()).isEqualTo(liveCredit);
+        assertThat(inactiveOrderBook.getInactiveBuyQueue()).isEmpty();
+    }
+}
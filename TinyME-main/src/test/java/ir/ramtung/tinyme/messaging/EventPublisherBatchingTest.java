@@ -0,0 +1,118 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.OrderActivateEvent;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.destination.DestinationResolver;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class EventPublisherBatchingTest {
+    private JmsTemplate jmsTemplate;
+    private ConnectionFactory connectionFactory;
+    private Session session;
+    private MessageProducer producer;
+    private MessageConverter messageConverter;
+
+    @BeforeEach
+    void setup() throws JMSException {
+        jmsTemplate = mock(JmsTemplate.class);
+        connectionFactory = mock(ConnectionFactory.class);
+        Connection connection = mock(Connection.class);
+        session = mock(Session.class);
+        producer = mock(MessageProducer.class);
+        Destination destination = mock(Destination.class);
+        DestinationResolver destinationResolver = mock(DestinationResolver.class);
+        messageConverter = mock(MessageConverter.class);
+
+        when(jmsTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(jmsTemplate.getDestinationResolver()).thenReturn(destinationResolver);
+        when(jmsTemplate.getMessageConverter()).thenReturn(messageConverter);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(true, Session.SESSION_TRANSACTED)).thenReturn(session);
+        when(destinationResolver.resolveDestinationName(eq(session), eq("RS"), anyBoolean())).thenReturn(destination);
+        when(session.createProducer(destination)).thenReturn(producer);
+        when(messageConverter.toMessage(any(), eq(session))).thenAnswer(invocation -> mock(Message.class));
+    }
+
+    private EnterOrderRq enterOrderRq(long requestId) {
+        return EnterOrderRq.createNewOrderRq(requestId, "ABC", requestId, LocalDateTime.now(), Side.BUY, 10, 100, 1, 1, 0);
+    }
+
+    @Test
+    void events_of_one_request_are_sent_in_a_single_transaction() throws Exception {
+        EventPublisher eventPublisher = new EventPublisher(jmsTemplate, "RS", true, 16, 256, 1000);
+        eventPublisher.beginRequest();
+        eventPublisher.publishAcceptedOrderEvent(enterOrderRq(1));
+        eventPublisher.publishOrderActivateEvent(1, 1);
+        eventPublisher.publishOrderUpdatedEvent(enterOrderRq(1));
+        eventPublisher.endRequest();
+        eventPublisher.shutdown();
+
+        verify(producer, times(3)).send(any(Message.class));
+        verify(session, times(1)).commit();
+    }
+
+    @Test
+    void a_failed_batch_is_retried_on_a_new_connection() throws Exception {
+        doThrow(new JMSException("broker down")).doNothing().when(producer).send(any(Message.class));
+        EventPublisher eventPublisher = new EventPublisher(jmsTemplate, "RS", true, 16, 256, 1000);
+        eventPublisher.beginRequest();
+        eventPublisher.publishAcceptedOrderEvent(enterOrderRq(1));
+        eventPublisher.publishOrderActivateEvent(1, 1);
+        eventPublisher.endRequest();
+        eventPublisher.shutdown();
+
+        verify(connectionFactory, times(2)).createConnection();
+        verify(producer, times(3)).send(any(Message.class));
+        verify(session, times(1)).commit();
+    }
+
+    @Test
+    void an_event_that_cannot_be_converted_is_dropped_without_retrying() throws Exception {
+        when(messageConverter.toMessage(any(OrderActivateEvent.class), eq(session)))
+                .thenThrow(new MessageConversionException("no layout"));
+        EventPublisher eventPublisher = new EventPublisher(jmsTemplate, "RS", true, 16, 256, 1000);
+        eventPublisher.beginRequest();
+        eventPublisher.publishAcceptedOrderEvent(enterOrderRq(1));
+        eventPublisher.publishOrderActivateEvent(1, 1);
+        eventPublisher.publishOrderUpdatedEvent(enterOrderRq(1));
+        eventPublisher.endRequest();
+        eventPublisher.shutdown();
+
+        verify(connectionFactory, times(1)).createConnection();
+        verify(messageConverter, times(1)).toMessage(any(OrderActivateEvent.class), eq(session));
+        verify(producer, times(2)).send(any(Message.class));
+        verify(session, times(1)).commit();
+    }
+
+    @Test
+    void synchronous_mode_sends_every_event_right_away() throws Exception {
+        EventPublisher eventPublisher = new EventPublisher(jmsTemplate, "RS", false, 16, 256, 1000);
+        eventPublisher.beginRequest();
+        eventPublisher.publishAcceptedOrderEvent(enterOrderRq(1));
+        eventPublisher.publishOrderUpdatedEvent(enterOrderRq(1));
+        eventPublisher.endRequest();
+        eventPublisher.shutdown();
+
+        verify(jmsTemplate, times(2)).convertAndSend(eq("RS"), any(Object.class));
+        verifyNoInteractions(session);
+    }
+}
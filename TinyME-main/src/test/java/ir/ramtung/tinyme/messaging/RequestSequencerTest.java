@@ -0,0 +1,226 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.request.BatchEnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.BatchOrderEntry;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.CommandJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestSequencerTest {
+    private OrderHandler orderHandler;
+    private List<Long> handledRequestIds;
+    private Map<String, Set<String>> threadsByIsin;
+
+    @BeforeEach
+    void setup() {
+        orderHandler = mock(OrderHandler.class);
+        handledRequestIds = Collections.synchronizedList(new ArrayList<>());
+        threadsByIsin = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            EnterOrderRq rq = invocation.getArgument(0);
+            record(rq.getSecurityIsin(), rq.getRequestId());
+            return null;
+        }).when(orderHandler).handleEnterOrder(any(), any());
+        doAnswer(invocation -> {
+            DeleteOrderRq rq = invocation.getArgument(0);
+            record(rq.getSecurityIsin(), rq.getRequestId());
+            return null;
+        }).when(orderHandler).handleDeleteOrder(any(), any());
+    }
+
+    private void record(String isin, long requestId) {
+        threadsByIsin.computeIfAbsent(isin, ignored -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+        handledRequestIds.add(requestId);
+    }
+
+    private EnterOrderRq newOrderRq(long requestId, String isin) {
+        return EnterOrderRq.createNewOrderRq(requestId, isin, requestId, LocalDateTime.now(), Side.BUY, 10, 100, 1, 1, 0);
+    }
+
+    @Test
+    void requests_of_a_security_are_handled_in_arrival_order() throws InterruptedException {
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, mock(EventPublisher.class), Optional.empty(), 4, 8, 4, 32);
+        for (long requestId = 1; requestId <= 100; requestId++) {
+            if (requestId % 10 == 0)
+                sequencer.submitDeleteOrder(new DeleteOrderRq(requestId, "ABC", Side.BUY, requestId - 1));
+            else
+                sequencer.submitEnterOrder(newOrderRq(requestId, "ABC"));
+        }
+        sequencer.shutdown();
+
+        List<Long> expected = new ArrayList<>();
+        for (long requestId = 1; requestId <= 100; requestId++)
+            expected.add(requestId);
+        assertThat(handledRequestIds).isEqualTo(expected);
+    }
+
+    @Test
+    void each_security_is_handled_by_a_single_shard() throws InterruptedException {
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, mock(EventPublisher.class), Optional.empty(), 3, 8, 4, 32);
+        String[] isins = {"ABC", "XYZ", "FOO", "BAR", "BAZ"};
+        for (long requestId = 1; requestId <= 50; requestId++)
+            sequencer.submitEnterOrder(newOrderRq(requestId, isins[(int) (requestId % isins.length)]));
+        sequencer.shutdown();
+
+        assertThat(handledRequestIds).hasSize(50);
+        assertThat(threadsByIsin).containsOnlyKeys(isins);
+        for (String isin : isins)
+            assertThat(threadsByIsin.get(isin)).containsExactly("matching-shard-" + sequencer.shardIndexOf(isin));
+    }
+
+    @Test
+    void batch_is_split_per_security_and_keeps_entry_order() throws InterruptedException {
+        EventPublisher eventPublisher = mock(EventPublisher.class);
+        List<List<BatchOrderEntry>> handledBatches = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            handledBatches.add(invocation.getArgument(0));
+            return null;
+        }).when(orderHandler).handleBatch(any(), any());
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, eventPublisher, Optional.empty(), 2, 8, 4, 32);
+        BatchOrderEntry abc1 = BatchOrderEntry.enter(newOrderRq(1, "ABC"));
+        BatchOrderEntry xyz = BatchOrderEntry.enter(newOrderRq(2, "XYZ"));
+        BatchOrderEntry abc2 = BatchOrderEntry.delete(new DeleteOrderRq(3, "ABC", Side.BUY, 1));
+
+        sequencer.submitBatch(new BatchEnterOrderRq(10, List.of(abc1, xyz, abc2)));
+        sequencer.shutdown();
+
+        assertThat(handledBatches).containsExactlyInAnyOrder(List.of(abc1, abc2), List.of(xyz));
+        verify(eventPublisher).collapseRequestEvents(10, "ABC");
+        verify(eventPublisher).collapseRequestEvents(10, "XYZ");
+    }
+
+    @Test
+    void requests_wait_for_the_pending_cascade_of_their_security() throws InterruptedException {
+        AtomicInteger quantaLeft = new AtomicInteger(3);
+        Security security = mock(Security.class);
+        when(orderHandler.findSecurity("ABC")).thenReturn(security);
+        when(security.isActivationPending()).thenAnswer(invocation -> quantaLeft.get() > 0);
+        doAnswer(invocation -> {
+            handledRequestIds.add((long) -quantaLeft.getAndDecrement());
+            return null;
+        }).when(orderHandler).continueActivation(security);
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, mock(EventPublisher.class), Optional.empty(), 1, 8, 4, 32);
+
+        sequencer.submitEnterOrder(newOrderRq(1, "ABC"));
+        sequencer.submitEnterOrder(newOrderRq(2, "XYZ"));
+        sequencer.submitEnterOrder(newOrderRq(3, "ABC"));
+        sequencer.shutdown();
+
+        assertThat(handledRequestIds).containsExactly(2L, -3L, -2L, -1L, 1L, 3L);
+    }
+
+    @Test
+    void a_full_shard_does_not_hold_back_requests_of_other_shards() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherShardHandled = new CountDownLatch(1);
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, mock(EventPublisher.class), Optional.empty(), 2, 2, 1, 32);
+        String other = "XYZ";
+        for (int i = 0; sequencer.shardIndexOf(other) == sequencer.shardIndexOf("ABC"); i++)
+            other = "XYZ" + i;
+        String otherIsin = other;
+        doAnswer(invocation -> {
+            EnterOrderRq rq = invocation.getArgument(0);
+            if (rq.getSecurityIsin().equals("ABC"))
+                release.await();
+            else
+                otherShardHandled.countDown();
+            record(rq.getSecurityIsin(), rq.getRequestId());
+            return null;
+        }).when(orderHandler).handleEnterOrder(any(), any());
+        Thread submitter = new Thread(() -> {
+            for (long requestId = 1; requestId <= 10; requestId++)
+                sequencer.submitEnterOrder(newOrderRq(requestId, "ABC"));
+        });
+        submitter.start();
+        while (submitter.getState() != Thread.State.TIMED_WAITING && submitter.isAlive())
+            Thread.onSpinWait();
+
+        sequencer.submitEnterOrder(newOrderRq(11, otherIsin));
+
+        assertThat(otherShardHandled.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+        submitter.join();
+        sequencer.shutdown();
+        assertThat(handledRequestIds).hasSize(11);
+    }
+
+    @Test
+    void cut_reports_changed_securities_per_shard() throws InterruptedException {
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, mock(EventPublisher.class), Optional.empty(), 3, 8, 4, 32);
+        String[] isins = {"ABC", "XYZ", "FOO", "BAR"};
+        for (long requestId = 1; requestId <= 8; requestId++)
+            sequencer.submitEnterOrder(newOrderRq(requestId, isins[(int) (requestId % isins.length)]));
+        Map<String, Integer> shardByChangedIsin = new ConcurrentHashMap<>();
+
+        sequencer.cut((shard, changed) -> changed.forEach(isin -> shardByChangedIsin.put(isin, shard)));
+
+        assertThat(handledRequestIds).hasSize(8);
+        assertThat(shardByChangedIsin).containsOnlyKeys(isins);
+        for (String isin : isins)
+            assertThat(shardByChangedIsin.get(isin)).isEqualTo(sequencer.shardIndexOf(isin));
+
+        sequencer.submitEnterOrder(newOrderRq(9, "ABC"));
+        Set<String> changedSinceLastCut = ConcurrentHashMap.newKeySet();
+        sequencer.cut((shard, changed) -> changedSinceLastCut.addAll(changed));
+        sequencer.shutdown();
+
+        assertThat(changedSinceLastCut).containsExactly("ABC");
+    }
+
+    @Test
+    void replay_reserves_credit_as_journaled_since_the_cut(@TempDir Path directory) throws Exception {
+        CommandJournal journal = new CommandJournal(directory.toString(), 4096);
+        Security security = Security.builder().isin("ABC").build();
+        Broker broker = Broker.builder().brokerId(1).credit(0).build();
+        journal.append(new CreditDecisions(1, "ABC", new boolean[]{false}));
+        journal.append(newOrderRq(1, "ABC"));
+        journal.append(new CreditDecisions(2, "ABC", new boolean[]{true}));
+        when(orderHandler.findSecurity("ABC")).thenReturn(security);
+        doReturn(List.of(security)).when(orderHandler).allSecurities();
+        List<Boolean> outcomes = new ArrayList<>();
+        doAnswer(invocation -> {
+            outcomes.add(security.reserveCredit(broker, 100));
+            outcomes.add(security.reserveCredit(broker, 100));
+            return null;
+        }).when(orderHandler).handleEnterOrder(any());
+        RequestSequencer sequencer = new RequestSequencer(orderHandler, mock(EventPublisher.class), Optional.of(journal), 1, 8, 4, 32);
+
+        sequencer.replay(journal, 0, Map.of(), 2);
+        sequencer.shutdown();
+
+        assertThat(outcomes).containsExactly(true, false);
+        assertThat(broker.getCredit()).isEqualTo(-100);
+        List<Object> journaledByReplay = new ArrayList<>();
+        journal.replay(3, (record, sequence) -> journaledByReplay.add(record));
+        assertThat(journaledByReplay).containsExactly(new CreditDecisions(2, "ABC", new boolean[]{false}));
+        journal.close();
+    }
+}
@@ -0,0 +1,102 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.CreditDecisions;
+import ir.ramtung.tinyme.messaging.Message;
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.BatchEnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.BatchOrderEntry;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryCodecTest {
+    private final BinaryCodec codec = new BinaryCodec();
+
+    private Object roundTrip(Object message) {
+        return roundTrip(message, 1024);
+    }
+
+    private Object roundTrip(Object message, int bufferSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        codec.encode(message, buffer);
+        buffer.flip();
+        Object decoded = codec.decode(buffer);
+        assertThat(buffer.hasRemaining()).isFalse();
+        return decoded;
+    }
+
+    @Test
+    void requests_survive_a_round_trip() {
+        LocalDateTime now = LocalDateTime.now();
+        EnterOrderRq newOrder = EnterOrderRq.createNewOrderRqWithStopPrice(1, "ABC", 2, now, Side.BUY, 300, 15450, 3, 4, 0, 15000);
+        EnterOrderRq update = EnterOrderRq.createUpdateOrderRqWithMEQ(5, "ABC", 2, now, Side.SELL, 200, 15500, 3, 4, 50, 10);
+        DeleteOrderRq delete = new DeleteOrderRq(6, "XYZ", Side.SELL, 7);
+        ChangeMatchingStateRq changeState = ChangeMatchingStateRq.createNewChangeMatchingStateRq("ABC", MatchingState.AUCTION);
+
+        assertThat(roundTrip(newOrder)).isEqualTo(newOrder);
+        assertThat(roundTrip(update)).isEqualTo(update);
+        assertThat(roundTrip(delete)).isEqualTo(delete);
+        assertThat(roundTrip(changeState)).isEqualTo(changeState);
+    }
+
+    @Test
+    void events_survive_a_round_trip() {
+        List<Event> events = List.of(
+                new OrderAcceptedEvent(1, 2),
+                new OrderUpdatedEvent(1, 2),
+                new OrderDeletedEvent(1, 2),
+                new OrderActivateEvent(1, 2),
+                new OrderRejectedEvent(1, 2, List.of(Message.UNKNOWN_SECURITY_ISIN, Message.INVALID_PEAK_SIZE)),
+                new OrderExecutedEvent(1, 2, List.of(new TradeDTO("ABC", 15450, 100, 2, 8), new TradeDTO("ABC", 15500, 50, 2, 9))),
+                new TradeEvent("ABC", 15450, 100, 2, 8),
+                new OpeningPriceEvent("ABC", 15450, 300),
+                new SecurityStateChangedEvent("ABC", MatchingState.CONTINUOUS),
+                new ChangeMatchingStateRqRejectedEvent("ABC", MatchingState.AUCTION)
+        );
+        for (Event event : events)
+            assertThat(roundTrip(event)).isEqualTo(event);
+    }
+
+    @Test
+    void batches_survive_a_round_trip() {
+        LocalDateTime now = LocalDateTime.now();
+        BatchEnterOrderRq batch = new BatchEnterOrderRq(9, List.of(
+                BatchOrderEntry.enter(EnterOrderRq.createNewOrderRq(1, "ABC", 2, now, Side.BUY, 300, 15450, 3, 4, 0)),
+                BatchOrderEntry.delete(new DeleteOrderRq(2, "ABC", Side.BUY, 2))));
+        BatchProcessedEvent processed = new BatchProcessedEvent(9, "ABC",
+                List.of(new OrderAcceptedEvent(1, 2), new OrderDeletedEvent(2, 2)));
+
+        assertThat(roundTrip(batch)).isEqualTo(batch);
+        assertThat(roundTrip(processed)).isEqualTo(processed);
+    }
+
+    @Test
+    void counts_and_strings_past_the_range_of_a_short_survive_a_round_trip() {
+        List<TradeDTO> trades = new ArrayList<>();
+        for (int i = 0; i <= Short.MAX_VALUE; i++)
+            trades.add(new TradeDTO("ABC", 15450, 1, 2, i));
+        OrderExecutedEvent executed = new OrderExecutedEvent(1, 2, trades);
+        OrderRejectedEvent rejected = new OrderRejectedEvent(1, 2, List.of("x".repeat(Short.MAX_VALUE + 1)));
+
+        assertThat(roundTrip(executed, 2 * 1024 * 1024)).isEqualTo(executed);
+        assertThat(roundTrip(rejected, 64 * 1024)).isEqualTo(rejected);
+    }
+
+    @Test
+    void credit_decisions_survive_a_round_trip() {
+        boolean[] outcomes = {true, false, false, true, true, false, true, true, false, true};
+        CreditDecisions decisions = new CreditDecisions(7, "ABC", outcomes);
+        assertThat(roundTrip(decisions)).isEqualTo(decisions);
+    }
+}
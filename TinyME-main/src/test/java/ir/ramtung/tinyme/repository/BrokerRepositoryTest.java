@@ -0,0 +1,23 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BrokerRepositoryTest {
+    @Test
+    void re_adding_a_broker_replaces_it() {
+        BrokerRepository brokerRepository = new BrokerRepository();
+        Broker first = Broker.builder().brokerId(1).credit(10L).build();
+        Broker second = Broker.builder().brokerId(2).credit(20L).build();
+        Broker replacement = Broker.builder().brokerId(1).credit(30L).build();
+        brokerRepository.addBroker(first);
+        brokerRepository.addBroker(second);
+        brokerRepository.addBroker(replacement);
+
+        assertThat(brokerRepository.findBrokerById(1)).isSameAs(replacement);
+        assertThat(brokerRepository.allBrokers()).containsExactlyInAnyOrder(replacement, second);
+        assertThat(brokerRepository.findBrokerById(3)).isNull();
+    }
+}
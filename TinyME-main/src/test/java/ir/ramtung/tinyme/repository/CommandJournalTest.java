@@ -0,0 +1,88 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandJournalTest {
+    @TempDir
+    Path directory;
+
+    private EnterOrderRq newOrderRq(long requestId) {
+        return EnterOrderRq.createNewOrderRq(requestId, "ABC", requestId, LocalDateTime.now(), Side.BUY, 10, 100, 1, 1, 0);
+    }
+
+    private List<Object> replayAfter(CommandJournal journal, long afterSequence) throws IOException {
+        List<Object> replayed = new ArrayList<>();
+        journal.replay(afterSequence, (request, sequence) -> replayed.add(request));
+        return replayed;
+    }
+
+    @Test
+    void appended_requests_are_replayed_in_order_after_reopening() throws IOException {
+        CommandJournal journal = new CommandJournal(directory.toString(), 4096);
+        EnterOrderRq enter = newOrderRq(1);
+        DeleteOrderRq delete = new DeleteOrderRq(2, "ABC", Side.BUY, 1);
+        journal.append(enter);
+        journal.append(delete);
+        journal.close();
+
+        CommandJournal reopened = new CommandJournal(directory.toString(), 4096);
+        assertThat(reopened.lastSequence()).isEqualTo(2);
+        assertThat(replayAfter(reopened, 0)).containsExactly(enter, delete);
+        reopened.close();
+    }
+
+    @Test
+    void segments_roll_when_full() throws IOException {
+        CommandJournal journal = new CommandJournal(directory.toString(), 256);
+        List<Object> appended = new ArrayList<>();
+        for (long requestId = 1; requestId <= 20; requestId++) {
+            EnterOrderRq rq = newOrderRq(requestId);
+            journal.append(rq);
+            appended.add(rq);
+        }
+
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isGreaterThan(1);
+        }
+        assertThat(replayAfter(journal, 0)).isEqualTo(appended);
+        journal.close();
+    }
+
+    @Test
+    void replay_skips_requests_covered_by_a_snapshot() throws IOException {
+        CommandJournal journal = new CommandJournal(directory.toString(), 256);
+        for (long requestId = 1; requestId <= 10; requestId++)
+            journal.append(newOrderRq(requestId));
+        long snapshotSequence = journal.lastSequence();
+        journal.discardUpTo(snapshotSequence);
+        EnterOrderRq afterSnapshot = newOrderRq(11);
+        journal.append(afterSnapshot);
+        journal.close();
+
+        CommandJournal reopened = new CommandJournal(directory.toString(), 256);
+        assertThat(replayAfter(reopened, snapshotSequence)).containsExactly(afterSnapshot);
+        assertThat(reopened.append(newOrderRq(12))).isEqualTo(12);
+        reopened.close();
+    }
+
+    @Test
+    void sequences_continue_after_a_snapshot_when_the_journal_is_empty() throws IOException {
+        CommandJournal journal = new CommandJournal(directory.toString(), 256);
+        journal.continueAfter(40);
+        assertThat(journal.append(newOrderRq(1))).isEqualTo(41);
+        journal.close();
+    }
+}
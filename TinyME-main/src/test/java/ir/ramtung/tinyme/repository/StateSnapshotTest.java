@@ -0,0 +1,108 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class StateSnapshotTest {
+    @TempDir
+    Path directory;
+    private BrokerRepository brokerRepository;
+    private ShareholderRepository shareholderRepository;
+    private SecurityRepository securityRepository;
+    private StateSnapshot stateSnapshot;
+
+    @BeforeEach
+    void setup() {
+        brokerRepository = new BrokerRepository();
+        shareholderRepository = new ShareholderRepository();
+        securityRepository = new SecurityRepository();
+        stateSnapshot = new StateSnapshot(brokerRepository, shareholderRepository, securityRepository);
+
+        Security security = Security.builder().isin("ABC").tickSize(5).lotSize(10).currentMatchingState(MatchingState.AUCTION).build();
+        security.getMatchingContext().setLastTradePrice(15450);
+        securityRepository.addSecurity(security);
+        Broker broker = Broker.builder().brokerId(1).name("broker").credit(100_000_000L).build();
+        brokerRepository.addBroker(broker);
+        Shareholder shareholder = Shareholder.builder().shareholderId(2).name("shareholder").build();
+        shareholder.incPosition(security, 100_000);
+        shareholderRepository.addShareholder(shareholder);
+
+        LocalDateTime entryTime = LocalDateTime.of(2024, 3, 1, 9, 30, 0, 123_456_789);
+        security.getOrderBook().enqueue(new Order(1, security, Side.BUY, 300, 15400, broker, shareholder, entryTime));
+        security.getOrderBook().enqueue(new Order(2, security, Side.BUY, 200, 15400, broker, shareholder, entryTime));
+        security.getOrderBook().enqueue(new IcebergOrder(3, security, Side.SELL, 500, 15500, broker, shareholder, entryTime,
+                100, OrderStatus.QUEUED, 0));
+        security.getInactiveOrderBook().enqueue(new StopLimitOrder(4, security, Side.BUY, 50, 15600, broker, shareholder,
+                entryTime, OrderStatus.NEW, 15550));
+        security.getRequestIds().put(1, 11);
+        security.getRequestIds().put(4, 14);
+    }
+
+    @Test
+    void state_survives_a_save_and_load() throws IOException {
+        Path file = directory.resolve("state.bin");
+        stateSnapshot.save(file, 42, 3);
+
+        StateSnapshot.Loaded loaded = stateSnapshot.load(file);
+        assertThat(loaded.journalSequence()).isEqualTo(42);
+        assertThat(loaded.cutNumber()).isEqualTo(3);
+
+        Security security = securityRepository.findSecurityByIsin("ABC");
+        assertThat(security.getTickSize()).isEqualTo(5);
+        assertThat(security.getLotSize()).isEqualTo(10);
+        assertThat(security.getCurrentMatchingState()).isEqualTo(MatchingState.AUCTION);
+        assertThat(security.getMatchingContext().getLastTradePrice()).isEqualTo(15450);
+        Broker broker = brokerRepository.findBrokerById(1);
+        assertThat(broker.getName()).isEqualTo("broker");
+        assertThat(broker.getCredit()).isEqualTo(100_000_000L);
+        Shareholder shareholder = shareholderRepository.findShareholderById(2);
+        assertThat(shareholder.getPosition(security)).isEqualTo(100_000);
+
+        assertThat(security.getOrderBook().getBuyQueue())
+                .extracting(Order::getOrderId, Order::getQuantity, Order::getEntryTime)
+                .containsExactly(tuple(1L, 300, LocalDateTime.of(2024, 3, 1, 9, 30, 0, 123_456_789)),
+                        tuple(2L, 200, LocalDateTime.of(2024, 3, 1, 9, 30, 0, 123_456_789)));
+        IcebergOrder iceberg = (IcebergOrder) security.getOrderBook().findByOrderId(Side.SELL, 3);
+        assertThat(iceberg.getTotalQuantity()).isEqualTo(500);
+        assertThat(iceberg.getPeakSize()).isEqualTo(100);
+        assertThat(iceberg.getDisplayedQuantity()).isEqualTo(100);
+        assertThat(iceberg.getBroker()).isSameAs(broker);
+        assertThat(iceberg.getShareholder()).isSameAs(shareholder);
+        StopLimitOrder stopLimitOrder = (StopLimitOrder) security.getInactiveOrderBook().findByOrderId(Side.BUY, 4);
+        assertThat(stopLimitOrder.getStopPrice()).isEqualTo(15550);
+        assertThat(stopLimitOrder.getSecurity()).isSameAs(security);
+        assertThat(security.getRequestIds().get(1)).isEqualTo(11);
+        assertThat(security.getRequestIds().get(4)).isEqualTo(14);
+        assertThat(security.getRequestIds().containsKey(2)).isFalse();
+    }
+
+    @Test
+    void a_copy_is_encoded_as_it_was_when_taken() throws IOException {
+        Security security = securityRepository.findSecurityByIsin("ABC");
+        StateSnapshot.SecurityCopy copy = stateSnapshot.copy(security);
+        security.getOrderBook().removeByOrderId(Side.BUY, 1);
+        security.getMatchingContext().setLastTradePrice(15500);
+
+        Path file = directory.resolve("state.bin");
+        stateSnapshot.save(file, 7, 0, Map.of(), stateSnapshot.captureBrokers(), List.of(stateSnapshot.encode(copy)));
+        stateSnapshot.load(file);
+
+        Security loaded = securityRepository.findSecurityByIsin("ABC");
+        assertThat(loaded.getMatchingContext().getLastTradePrice()).isEqualTo(15450);
+        assertThat(loaded.getOrderBook().getBuyQueue()).extracting(Order::getOrderId).containsExactly(1L, 2L);
+        assertThat(loaded.getInactiveOrderBook().findByOrderId(Side.BUY, 4)).isNotNull();
+        assertThat(shareholderRepository.findShareholderById(2).getPosition(loaded)).isEqualTo(100_000);
+    }
+}
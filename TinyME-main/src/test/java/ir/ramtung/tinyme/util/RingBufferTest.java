@@ -0,0 +1,56 @@
+package ir.ramtung.tinyme.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferTest {
+    @Test
+    void rejects_offers_when_full_and_frees_slots_after_drain() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(3);
+        assertThat(ringBuffer.capacity()).isEqualTo(4);
+        for (int i = 0; i < 4; i++)
+            assertThat(ringBuffer.offer(i)).isTrue();
+        assertThat(ringBuffer.offer(4)).isFalse();
+
+        List<Integer> drained = new ArrayList<>();
+        List<Boolean> endOfBatch = new ArrayList<>();
+        assertThat(ringBuffer.drain((element, end) -> { drained.add(element); endOfBatch.add(end); }, 3)).isEqualTo(3);
+        assertThat(drained).containsExactly(0, 1, 2);
+        assertThat(endOfBatch).containsExactly(false, false, true);
+        assertThat(ringBuffer.offer(4)).isTrue();
+    }
+
+    @Test
+    void keeps_the_order_of_each_producer() throws InterruptedException {
+        RingBuffer<long[]> ringBuffer = new RingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 10_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++)
+                    ringBuffer.put(new long[]{producer, i});
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long[] nextExpected = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            received += ringBuffer.drain((element, end) -> {
+                assertThat(element[1]).isEqualTo(nextExpected[(int) element[0]]);
+                nextExpected[(int) element[0]]++;
+            }, 16);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertThat(nextExpected).containsOnly(perProducer);
+        assertThat(ringBuffer.isEmpty()).isTrue();
+    }
+}